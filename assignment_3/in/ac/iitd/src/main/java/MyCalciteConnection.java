@@ -40,6 +40,7 @@ import org.apache.calcite.sql.type.SqlTypeName;
 import optimizer.rel.PRel;
 import manager.StorageManager;
 
+import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.Collections;
 import java.util.HashMap;
@@ -68,8 +69,12 @@ public class MyCalciteConnection {
     private StorageManager storage_manager;
     
     public MyCalciteConnection() throws Exception {
+        this(new StorageManager());
+    }
+
+    public MyCalciteConnection(StorageManager storage_manager) throws Exception {
 
-        storage_manager = new StorageManager();
+        this.storage_manager = storage_manager;
         Properties info = new Properties();
         info.put("model", jsonPath("model"));
         info.put(CalciteConnectionProperty.CASE_SENSITIVE.camelName(), Boolean.FALSE.toString());
@@ -118,8 +123,11 @@ public class MyCalciteConnection {
             )).getType());
         }
 
-        // load the tables
+        // load the tables, except those already restored from a snapshot
         for (String table : tableSchema.keySet()) {
+            if (storage_manager.check_file_exists(table)) {
+                continue;
+            }
             List<RelDataType> fields = tableSchema.get(table);
             storage_manager.loadFile(table + ".csv", fields);
         }
@@ -163,6 +171,7 @@ public class MyCalciteConnection {
 
     public void close() throws Exception{
         connection.close();
+        storage_manager.close();
     }
 
     public SqlNode parseSql(String sql) throws Exception{
@@ -189,11 +198,22 @@ public class MyCalciteConnection {
         );
     }
 
+    // saves the loaded tables and indexes, reopen with new MyCalciteConnection(StorageManager.open_snapshot(path))
+    public void checkpoint(String path){
+        storage_manager.checkpoint(Paths.get(path));
+        return;
+    }
+
     public void create_index(String table, String column_name, int order){
         storage_manager.create_index(table, column_name, order);
         return;
     }
 
+    // row in schema order, returns its RID, see storage.RecordId
+    public long insert_row(String table, Object[] row){
+        return storage_manager.insert_row(table, row);
+    }
+
     public List<Object []> evaluate(RelNode node) {
         return ((PRel) node).evaluate(storage_manager);
     }
@@ -203,6 +223,15 @@ public class MyCalciteConnection {
         return storage_manager.get_records_from_block(table, block_id);
     }
 
+    // only the named columns of each record, in that order
+    public List<Object []> get_records_from_block(String table, int block_id, List<String> column_names) {
+        int[] columns = storage_manager.get_columns(table, column_names);
+        if (columns == null) {
+            return null;
+        }
+        return storage_manager.get_records_from_block(table, block_id, columns);
+    }
+
     public <T> ArrayList<T> return_bfs_index(String table, String column_name){
         return storage_manager.return_bfs_index(table, column_name);
     }
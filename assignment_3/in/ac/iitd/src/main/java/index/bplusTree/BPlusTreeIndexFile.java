@@ -1,18 +1,32 @@
 package index.bplusTree;
 
 import storage.AbstractFile;
+import storage.RecordId;
 
 import java.util.Queue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /*
     * Tree is a collection of BlockNodes
     * The first BlockNode is the metadata block - stores the order and the block_id of the root node
+    * Metadata block - order | root node id | format version | flags
+    *                    2   |      4       |       1        |   1
+    * Block ids are 4 bytes everywhere in the tree, so an index can grow past 65535 blocks
+    * Keys are stored in the order preserving encoding of KeyEncoding, a search encodes its key once and
+    * then only compares bytes
+    * Entries are ordered by key and then by RID, so the entries of a key are in one run of the leaf chain
+    * however many leaves it spans. A separator is the key of the first entry right of it, with its RID
+    * only if the entry left of it has the same key
+    * Descents read internal nodes through a NodeCache of decoded nodes, only the leaf is read from its block
+    * With TRUNCATED_SEPARATORS set, a separator is the shortest prefix of the first key right of it that is
+    * greater than the last key left of it, instead of that whole key, see KeyEncoding.separator. Only
+    * bulk loaded string indexes set it, insert built trees keep whole keys in their internal nodes
 
     * The total number of keys in all leaf nodes is the total number of records in the records file.
 */
@@ -21,6 +35,9 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 
     Class<T> typeClass;
 
+    // decoded internal nodes, entries are dropped by block_modified
+    private final NodeCache nodeCache = new NodeCache(NODE_CACHE_SIZE);
+
     // Constructor - creates the metadata block and the root node
     public BPlusTreeIndexFile(int order, Class<T> typeClass) {
         
@@ -35,15 +52,72 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         orderBytes[1] = (byte) order;
         node.write_data(0, orderBytes);
 
-        // next 2 bytes are for root_node_id, here 1
-        byte[] rootNodeIdBytes = new byte[2];
-        rootNodeIdBytes[0] = 0;
-        rootNodeIdBytes[1] = 1;
-        node.write_data(2, rootNodeIdBytes);
+        // next 4 bytes are for root_node_id, here 1
+        setRootId(node, 1);
+
+        // then the version of the node layouts and no flags
+        node.write_data(VERSION_OFFSET, new byte[]{ FORMAT_VERSION, 0 });
 
         // push these nodes to the blocks list
-        blocks.add(node);
-        blocks.add(root);
+        add_block(node);
+        add_block(root);
+    }
+
+    // version 1 used 2 byte block ids, version 2 had no slots in leaf entries, version 3 stored the
+    // entries of a node one after the other without a slot directory and version 4 stored keys little
+    // endian with strings in the platform charset, version 5 had no prefixes in leaves and version 6 kept
+    // equal keys in insertion order, none of them is readable any more
+    private static final byte FORMAT_VERSION = 7;
+    private static final int VERSION_OFFSET = 6;
+    private static final int FLAGS_OFFSET = 7;
+
+    // separators are truncated keys
+    private static final byte TRUNCATED_SEPARATORS = 1;
+
+    // internal nodes kept decoded per index, enough for the upper levels of large trees
+    private static final int NODE_CACHE_SIZE = 1024;
+
+    // kinds of blocks in an index file, see block_kind
+    private static final byte METADATA_BLOCK = 0;
+    private static final byte LEAF_BLOCK = 1;
+    private static final byte INTERNAL_BLOCK = 2;
+
+    @Override
+    protected BlockNode load_block(ByteBuffer page, byte kind) {
+        if(kind == LEAF_BLOCK){
+            return new LeafNode<T>(page, typeClass);
+        }
+        if(kind == INTERNAL_BLOCK){
+            return new InternalNode<T>(page, typeClass);
+        }
+        return new BlockNode(page);
+    }
+
+    @Override
+    protected byte block_kind(BlockNode block) {
+        if(block instanceof LeafNode){
+            return LEAF_BLOCK;
+        }
+        if(block instanceof InternalNode){
+            return INTERNAL_BLOCK;
+        }
+        return METADATA_BLOCK;
+    }
+
+    // creates an index file without any blocks
+    // only used when the blocks of an existing index are attached afterwards, e.g. from a Snapshot
+    public BPlusTreeIndexFile(Class<T> typeClass) {
+        super();
+        this.typeClass = typeClass;
+    }
+
+    @Override
+    protected void block_modified(int block_id) {
+        nodeCache.invalidate(block_id);
+    }
+
+    public Class<T> getTypeClass() {
+        return typeClass;
     }
 
     private boolean isFull(int id){
@@ -54,8 +128,25 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 
      private int getRootId() {
         BlockNode node = blocks.get(0);
-        byte[] rootBlockIdBytes = node.get_data(2, 2);
-        return (rootBlockIdBytes[0] << 8) | (rootBlockIdBytes[1] & 0xFF);
+        byte version = node.get_byte(VERSION_OFFSET);
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported index format version " + version);
+        }
+        return ((node.get_byte(2) & 0xFF) << 24) | ((node.get_byte(3) & 0xFF) << 16)
+                | ((node.get_byte(4) & 0xFF) << 8) | (node.get_byte(5) & 0xFF);
+    }
+
+    private boolean truncatesSeparators() {
+        return (blocks.get(0).get_byte(FLAGS_OFFSET) & TRUNCATED_SEPARATORS) != 0;
+    }
+
+    private void setRootId(BlockNode node, int rootId) {
+        byte[] rootNodeIdBytes = new byte[4];
+        rootNodeIdBytes[0] = (byte) (rootId >> 24);
+        rootNodeIdBytes[1] = (byte) (rootId >> 16);
+        rootNodeIdBytes[2] = (byte) (rootId >> 8);
+        rootNodeIdBytes[3] = (byte) rootId;
+        node.write_data(2, rootNodeIdBytes);
     }
 
     public int getOrder() {
@@ -73,115 +164,124 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         return isLeaf(blocks.get(id));
     }
 
-    private int searchRecursive1(int nodeId, T key, ArrayList<Integer> visitedNodes) {
-        BlockNode node = blocks.get(nodeId);
-        visitedNodes.add(nodeId);
-
-        if (isLeaf(nodeId)) {
-            return nodeId;
-        } else {
-            InternalNode<T> internalNode = (InternalNode<T>) node;
-            int childId = internalNode.search1(key);
-            return searchRecursive1(childId, key,visitedNodes);
+    // child of internal node nodeId to look for key in, see InternalNode.search
+    // -1 if nodeId is a leaf, depth is the number of nodes above it
+    private int searchChild(int nodeId, int depth, byte[] key) {
+        NodeCache.Node cached = nodeCache.get(nodeId);
+        if (cached == null) {
+            BlockNode node = blocks.get(nodeId);
+            if (isLeaf(node)) {
+                return -1;
+            }
+            cached = nodeCache.put(nodeId, depth, (InternalNode<?>) node);
+            if (cached == null) {
+                return ((InternalNode<?>) node).search(key);
+            }
         }
+        return cached.search(key);
     }
 
-    private T convertBytesToT1(byte[] bytes, Class<T> typeClass) {
-        if (typeClass.equals(String.class)) {
-            return typeClass.cast(new String(bytes));
-        } else if (typeClass.equals(Integer.class)) {
-            return typeClass.cast(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt());
-        } else if (typeClass.equals(Boolean.class)) {
-            return typeClass.cast(bytes[0] != 0);
-        } else if (typeClass.equals(Float.class)) {
-            return typeClass.cast(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getFloat());
-        } else if (typeClass.equals(Double.class)) {
-            return typeClass.cast(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getDouble());
-        } else {
-            return null;
+    private int searchRecursive1(int nodeId, byte[] key, ArrayList<Integer> visitedNodes) {
+        visitedNodes.add(nodeId);
+        int childId = searchChild(nodeId, visitedNodes.size() - 1, key);
+        if (childId == -1) {
+            return nodeId;
         }
+        return searchRecursive1(childId, key, visitedNodes);
     }
 
-    
-
-
+    // the slot of the record is not known, see RecordId.NO_SLOT
+    public void insert(T key, int block_id) {
+        insert(key, block_id, RecordId.NO_SLOT);
+    }
 
+    // inserts key for the record in slot of block_id
+    public void insert(T key, int block_id, int slot) {
+        insert(KeyEncoding.encode(key, typeClass), block_id, slot);
+    }
 
-    public void insert(T key, int block_id) {
+    private void insert(byte[] key, int block_id, int slot) {
         int rootId = getRootId();
-        BlockNode rootNode = blocks.get(rootId);
 
         ArrayList<Integer> visitedNodes = new ArrayList<>();
-        int leafNodeId = searchRecursive1(rootId, key, visitedNodes);
+        byte[] entry = KeyEncoding.withRid(key, block_id, slot);
+        int leafNodeId = searchRecursive1(rootId, entry, visitedNodes);
         LeafNode<T> L = (LeafNode<T>) blocks.get(leafNodeId);
-        if (!isFull(leafNodeId)) {
-            L.insert(key, block_id);
+        if (!isFull(leafNodeId) && L.fits(key)) {
+            L.insert(key, block_id, slot);
         } else {
-            L.insert(key, block_id);
-            int numKeys = L.getNumKeys();
-            byte[] insert_data= L.splitleaf();
             LeafNode<T> L1 = new LeafNode<>(this.typeClass);
-            byte[] next_pointer=L.get_data(4,2);
-            L1.insert1(insert_data,(numKeys+1)/2,leafNodeId,next_pointer);
-            blocks.add(L1);
+            if (L.fits(key)) {
+                L.insert(key, block_id, slot);
+                L.split(L1);
+            } else {
+                // no room left in the block, e.g. after a bulk load, the key goes into its half after the split
+                L.split(L1);
+                (KeyEncoding.compare(entry, L1.getEntryBytes(0)) < 0 ? L : L1).insert(key, block_id, slot);
+            }
+            int next_pointer = L.getNext();
+            L1.setPrev(leafNodeId);
+            L1.setNext(next_pointer);
+            add_block(L1);
             int L1Id = blocks.size() - 1;
 
-            byte[] bytesL1 = new byte[2];
-            bytesL1[0] = (byte) (L1Id >> 8);
-            bytesL1[1] = (byte) L1Id;
-
-            L.write_data(4,bytesL1);
+            L.setNext(L1Id);
+            // 0 marks the end of the chain, block 0 is the metadata block
+            if (next_pointer != 0) {
+                getLeaf(next_pointer).setPrev(L1Id);
+            }
 
-            byte[] keyLengthBytes = L1.get_data(10, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] keyBytes = L1.get_data(12, keyLength);
-            T firstKeyOfL1 = convertBytesToT1(keyBytes, this.typeClass);
+            int last = L.getNumKeys() - 1;
+            byte[] firstKeyOfL1 = separator(L.getKeyBytes(last), RecordId.make(L.getBlockId(last), L.getSlot(last)),
+                    L1.getKeyBytes(0), RecordId.make(L1.getBlockId(0), L1.getSlot(0)), truncatesSeparators());
             visitedNodes.remove(visitedNodes.size() - 1);
             insertIntoParent(leafNodeId, firstKeyOfL1, L1Id, visitedNodes);
         }
     }
 
 
-    private void insertIntoParent(int leftId, T key, int RightId,ArrayList<Integer> visitedNodes) {
+    // separator between the entry left of it and the entry right of it. The RID of the right entry is only
+    // needed if both have the same key, truncate cuts it to the shortest prefix greater than the left entry
+    private static byte[] separator(byte[] leftKey, long leftRid, byte[] rightKey, long rightRid, boolean truncate) {
+        if (!truncate && !Arrays.equals(leftKey, rightKey)) {
+            return rightKey;
+        }
+        byte[] right = KeyEncoding.withRid(rightKey, RecordId.block_id(rightRid), RecordId.slot(rightRid));
+        if (!truncate) {
+            return right;
+        }
+        return KeyEncoding.separator(KeyEncoding.withRid(leftKey, RecordId.block_id(leftRid), RecordId.slot(leftRid)), right);
+    }
+
+    private void insertIntoParent(int leftId, byte[] key, int RightId,ArrayList<Integer> visitedNodes) {
 
         if (visitedNodes.isEmpty()) {
-            InternalNode<T> root = new InternalNode<>(key,leftId, RightId, this.typeClass);
-            blocks.add(root);
+            InternalNode<T> root = new InternalNode<>(leftId, this.typeClass);
+            root.insert(key, RightId);
+            add_block(root);
             BlockNode node = blocks.get(0);
             int rootId = blocks.size() - 1;
-            byte[] bytesroot = new byte[2];
-            bytesroot[0] = (byte) (rootId >> 8);
-            bytesroot[1] = (byte) rootId;
-
-            node.write_data(2,bytesroot);
+            setRootId(node, rootId);
             return;
         } else {
             int parentId = visitedNodes.get(visitedNodes.size() - 1);
             InternalNode<T> P = (InternalNode<T>) blocks.get(parentId);
-            if (!isFull(parentId)) {
+            if (!isFull(parentId) && P.fits(key.length)) {
                 P.insert(key,RightId);
                 return;
             } else {
-                P.insert(key,RightId);
-                int numKeys = P.getNumKeys();
-                byte[] insert_data= P.splitNode();
-
-                int k1Length = (insert_data[0] << 8) | (insert_data[1] & 0xFF);
-                byte[] K_1 = new byte[k1Length];
-                for (int i = 0; i < k1Length; i++) {
-                    K_1[i] = insert_data[i + 2];
+                byte[] key1;
+                InternalNode<T> P1;
+                if (P.fits(key.length)) {
+                    P.insert(key,RightId);
+                    key1 = P.getKeyBytes(P.getNumKeys() / 2);
+                    P1 = P.split();
+                } else {
+                    key1 = P.getKeyBytes(P.getNumKeys() / 2);
+                    P1 = P.split();
+                    (KeyEncoding.compare(key, key1) < 0 ? P : P1).insert(key, RightId);
                 }
-                T key1= convertBytesToT1(K_1,this.typeClass);
-                int pointer = (insert_data[2 + k1Length] << 8) | (insert_data[3 + k1Length] & 0xFF);
-                int rem_length=insert_data.length-4-k1Length;
-                byte[] data_rem = new byte[rem_length];
-                for (int i = 0; i+4+k1Length < insert_data.length; i++) {
-                    data_rem[i] = insert_data[i+4+k1Length];
-                }
-                
-                InternalNode<T> P1 = new InternalNode<T>(key1,pointer,-1,this.typeClass);
-                P1.insert2(data_rem,(numKeys-1)/2);
-                blocks.add(P1);
+                add_block(P1);
                 int P1Id = blocks.size() - 1;
                 
                 visitedNodes.remove(visitedNodes.size() - 1);
@@ -193,36 +293,279 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 
     }
 
-    
+    // builds the tree bottom up from all its entries at once, key i is for the record rids[i], see RecordId
+    // the index must still be empty. Entries are sorted by key and RID, like inserting them would. Leaves are written left to right, filled to fillFactor of
+    // order - 1 keys but never past the block, then each level of internal nodes is built over the one below
+    // it, so every node is written once and no node is ever split
+    // Each leaf gets the prefix its keys have in common. String separators are truncated, also for the
+    // keys inserted later, which gives internal nodes of long strings a much larger fanout
+    public void bulkLoad(List<T> keys, long[] rids, double fillFactor) {
+        int order = getOrder();
+        if (order < 3 || fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("Bulk loading needs an order of at least 3 and a fill factor in (0, 1]");
+        }
+        if (blocks.size() != 2 || blocks.get(1).getNumKeys() != 0) {
+            throw new IllegalStateException("Bulk loading needs an empty index");
+        }
+        LeafNode<T> first = getLeaf(1);
+
+        // a sort of the positions by encoded key and RID, the keys are not moved, large inputs are sorted
+        // by several threads
+        byte[][] encoded = new byte[keys.size()][];
+        Integer[] sorted = new Integer[keys.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            encoded[i] = KeyEncoding.encode(keys.get(i), typeClass);
+            sorted[i] = i;
+        }
+        Arrays.parallelSort(sorted, (a, b) -> {
+            int c = KeyEncoding.compare(encoded[a], encoded[b]);
+            return c != 0 ? c : Long.compare(rids[a], rids[b]);
+        });
+        if (sorted.length == 0) {
+            return;
+        }
+
+        boolean truncate = typeClass.equals(String.class);
+        if (truncate) {
+            blocks.get(0).write_data(FLAGS_OFFSET, new byte[]{ TRUNCATED_SEPARATORS });
+        }
+
+        int maxKeys = order - 1;
+        int leafKeys = Math.max(1, (int) (maxKeys * fillFactor));
+        int internalChildren = Math.max(2, Math.min(order, (int) (maxKeys * fillFactor) + 1));
+
+        // leaves, block 1 is the first one. The others get the next block ids, so the chain can be
+        // written before they are added
+        List<Integer> level = new ArrayList<>();
+        List<byte[]> minKeys = new ArrayList<>();
+        LeafNode<T> leaf = first;
+        int leafId = 1;
+        int done = 0;
+        while (done < sorted.length) {
+            int count = evenShare(sorted.length - done, leafKeys);
+            byte[] key = encoded[sorted[done]];
+            level.add(leafId);
+            minKeys.add(done > 0 ? separator(encoded[sorted[done - 1]], rids[sorted[done - 1]], key, rids[sorted[done]], truncate) : key);
+            // the prefix of the keys meant for the leaf, also common to the ones that fit
+            byte[] last = encoded[sorted[Math.min(done + count, sorted.length) - 1]];
+            leaf.setPrefix(key, KeyEncoding.commonPrefixLength(key, last));
+            for (int n = 0; n < count && done < sorted.length; n++) {
+                if (n > 0) {
+                    key = encoded[sorted[done]];
+                    if (!leaf.fits(key)) {
+                        break;
+                    }
+                }
+                long rid = rids[sorted[done++]];
+                leaf.append(key, RecordId.block_id(rid), RecordId.slot(rid));
+            }
+            if (done == sorted.length) {
+                break;
+            }
+            int nextId = blocks.size() + (leaf == first ? 0 : 1);
+            leaf.setNext(nextId);
+            if (leaf != first) {
+                add_block(leaf);
+            }
+            leaf = new LeafNode<>(typeClass);
+            leaf.setPrev(leafId);
+            leafId = nextId;
+        }
+        if (leaf != first) {
+            add_block(leaf);
+        }
+
+        // internal levels, the key left of each child is the smallest key under it, or the separator
+        // between it and the leaf before it
+        while (level.size() > 1) {
+            List<Integer> parents = new ArrayList<>();
+            List<byte[]> parentMinKeys = new ArrayList<>();
+            int child = 0;
+            while (child < level.size()) {
+                int remaining = level.size() - child;
+                int count = evenShare(remaining, internalChildren);
+                // a single child left over would make a node without keys
+                if (remaining - count == 1) {
+                    count = count > 2 ? count - 1 : count + 1;
+                }
+                InternalNode<T> node = new InternalNode<>(level.get(child), typeClass);
+                parentMinKeys.add(minKeys.get(child));
+                child++;
+                for (int n = 1; n < count && child < level.size(); n++) {
+                    byte[] key = minKeys.get(child);
+                    if (n > 1 && !node.fits(key.length)) {
+                        break;
+                    }
+                    node.append(key, level.get(child++));
+                }
+                add_block(node);
+                parents.add(blocks.size() - 1);
+            }
+            level = parents;
+            minKeys = parentMinKeys;
+        }
+        setRootId(blocks.get(0), level.get(0));
+    }
+
+    // size of the next node when remaining entries are spread evenly over nodes of at most max entries
+    private static int evenShare(int remaining, int max) {
+        int nodes = (remaining + max - 1) / max;
+        return (remaining + nodes - 1) / nodes;
+    }
 
     public int search(T key) {
 
         /* Write your code here */
-            
-        int rootId = getRootId();
-        return searchRecursive(rootId, key);
+        long rid = searchRid(key);
+        return rid == -1 ? -1 : RecordId.block_id(rid);
+    }
+
+    // leaf to look for the encoded key in, see InternalNode.search. A key on its own finds its first entry
+    private int searchLeaf(byte[] key) {
+        int nodeId = getRootId();
+        int childId;
+        for (int depth = 0; (childId = searchChild(nodeId, depth, key)) != -1; depth++) {
+            nodeId = childId;
+        }
+        return nodeId;
     }
 
+    // entries with lower <= key <= upper in key order, lower < key and key < upper for exclusive bounds
+    // a null bound is an open end, scan(null, false, null, false) reads the whole index
+    public IndexCursor<T> scan(T lower, boolean lowerInclusive, T upper, boolean upperInclusive) {
+        byte[] upperKey = upper == null ? null : KeyEncoding.encode(upper, typeClass);
+        int nodeId = getRootId();
+        if (lower == null) {
+            while (!isLeaf(nodeId)) {
+                nodeId = ((InternalNode<?>) blocks.get(nodeId)).getChild(0);
+            }
+            return new IndexCursor<>(this, getLeaf(nodeId), 0, upperKey, upperInclusive);
+        }
 
-    private int searchRecursive(int nodeId, T key) {
-        BlockNode node = blocks.get(nodeId);
+        // an exclusive bound starts after the last entry of the key
+        byte[] lowerKey = KeyEncoding.encode(lower, typeClass);
+        if (!lowerInclusive) {
+            lowerKey = KeyEncoding.afterKey(lowerKey);
+        }
+        LeafNode<T> leaf = getLeaf(searchLeaf(lowerKey));
+        return new IndexCursor<>(this, leaf, leaf.lowerBound(lowerKey), upperKey, upperInclusive);
+    }
 
-        if (isLeaf(nodeId)) {
-            return ((LeafNode<T>) node).search(key);
-        } else {
-            InternalNode<T> internalNode = (InternalNode<T>) node;
-            int childId = internalNode.search(key);
-            return searchRecursive(childId, key);
+    // RIDs of all records with key in RID order, see RecordId
+    public List<Long> searchAll(T key) {
+        List<Long> rids = new ArrayList<>();
+        IndexCursor<T> cursor = scan(key, true, key, true);
+        while (cursor.next()) {
+            rids.add(cursor.getRid());
         }
+        return rids;
     }
 
+    @SuppressWarnings("unchecked")
+    LeafNode<T> getLeaf(int id) {
+        return (LeafNode<T>) blocks.get(id);
+    }
+
+    // calls visitor with the leaf and position of every entry of key from the first one >= start, a key with
+    // or without a RID, stops once it returns true
+    private boolean forEachEntry(byte[] key, byte[] start, EntryVisitor<T> visitor) {
+        int leafId = searchLeaf(start);
+        int i = getLeaf(leafId).lowerBound(start);
+        // 0 ends the leaf chain, block 0 is the metadata block
+        while (leafId != 0) {
+            LeafNode<T> leaf = getLeaf(leafId);
+            int numKeys = leaf.getNumKeys();
+            for (; i < numKeys; i++) {
+                if (leaf.compareKey(i, key) > 0) {
+                    return false;
+                }
+                if (visitor.visit(leaf, i, RecordId.make(leaf.getBlockId(i), leaf.getSlot(i)))) {
+                    return true;
+                }
+            }
+            leafId = leaf.getNext();
+            i = 0;
+        }
+        return false;
+    }
+
+    // the entries of rid start at its block, an entry without a slot comes after the others of the block
+    private static byte[] startOf(byte[] key, long rid) {
+        return KeyEncoding.withRid(key, RecordId.block_id(rid), 0);
+    }
+
+    private interface EntryVisitor<T> {
+        boolean visit(LeafNode<T> leaf, int index, long rid);
+    }
+
+    // an entry written without a slot matches any record of its block
+    private static boolean matches(long entry_rid, long rid) {
+        if (RecordId.slot(entry_rid) == RecordId.NO_SLOT) {
+            return RecordId.block_id(entry_rid) == RecordId.block_id(rid);
+        }
+        return entry_rid == rid;
+    }
+
+    // RID of the first record with key, -1 if there is none
+    public long searchRid(T key) {
+        long[] found = { -1 };
+        byte[] encoded = KeyEncoding.encode(key, typeClass);
+        forEachEntry(encoded, encoded, (leaf, index, rid) -> {
+            found[0] = rid;
+            return true;
+        });
+        return found[0];
+    }
 
     // returns true if the key was found and deleted, false otherwise
     // (Optional for Assignment 3)
+    // removes every entry of key, leaves are not merged so the tree keeps its shape
     public boolean delete(T key) {
 
         /* Write your code here */
-        return false;
+        boolean deleted = false;
+        while (delete(key, -1)) {
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    // removes the entry of key for the record rid, any entry of key if rid is -1
+    public boolean delete(T key, long rid) {
+        byte[] encoded = KeyEncoding.encode(key, typeClass);
+        return forEachEntry(encoded, rid == -1 ? encoded : startOf(encoded, rid), (leaf, index, entry_rid) -> {
+            if (rid != -1 && !matches(entry_rid, rid)) {
+                return false;
+            }
+            leaf.remove(index);
+            return true;
+        });
+    }
+
+    // points the entry of key for the record old_rid at new_rid, used when records are moved
+    // the entry is changed in place if it stays between its neighbours, otherwise it is inserted again
+    public boolean update(T key, long old_rid, long new_rid) {
+        byte[] encoded = KeyEncoding.encode(key, typeClass);
+        byte[] entry = KeyEncoding.withRid(encoded, RecordId.block_id(new_rid), RecordId.slot(new_rid));
+        boolean[] moved = { false };
+        boolean found = forEachEntry(encoded, startOf(encoded, old_rid), (leaf, index, entry_rid) -> {
+            if (!matches(entry_rid, old_rid)) {
+                return false;
+            }
+            if (index > 0 && index < leaf.getNumKeys() - 1
+                    && KeyEncoding.compare(leaf.getEntryBytes(index - 1), entry) < 0
+                    && KeyEncoding.compare(entry, leaf.getEntryBytes(index + 1)) < 0) {
+                leaf.setRid(index, RecordId.block_id(new_rid), RecordId.slot(new_rid));
+            } else {
+                leaf.remove(index);
+                moved[0] = true;
+            }
+            return true;
+        });
+        if (moved[0]) {
+            insert(encoded, RecordId.block_id(new_rid), RecordId.slot(new_rid));
+        }
+        return found;
     }
 
     // DO NOT CHANGE THIS - will be used for evaluation
@@ -2,6 +2,9 @@ package index.bplusTree;
 
 import storage.AbstractBlock;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 // Extends AbstractBlock, will be extended by InternalNode and LeafNode
 public class BlockNode extends AbstractBlock {
 
@@ -13,8 +16,81 @@ public class BlockNode extends AbstractBlock {
         super();
     }
 
+    public BlockNode(ByteBuffer page) {
+        super(page);
+    }
+
     public int getNumKeys() {
-        byte[] numKeysBytes = this.get_data(0, 2);
-        return (numKeysBytes[0] << 8) | (numKeysBytes[1] & 0xFF);
+        return readShort(0);
+    }
+
+    // node headers, key lengths and block ids are big endian
+    // 2 byte values are unsigned, block ids take 4 bytes
+    protected int readShort(int offset) {
+        return ((get_byte(offset) & 0xFF) << 8) | (get_byte(offset + 1) & 0xFF);
+    }
+
+    protected void writeShort(int offset, int value) {
+        byte[] bytes = new byte[2];
+        bytes[0] = (byte) (value >> 8);
+        bytes[1] = (byte) value;
+        this.write_data(offset, bytes);
+    }
+
+    protected int readInt(int offset) {
+        return ((get_byte(offset) & 0xFF) << 24) | ((get_byte(offset + 1) & 0xFF) << 16)
+                | ((get_byte(offset + 2) & 0xFF) << 8) | (get_byte(offset + 3) & 0xFF);
+    }
+
+    protected void writeInt(int offset, int value) {
+        byte[] bytes = new byte[4];
+        bytes[0] = (byte) (value >> 24);
+        bytes[1] = (byte) (value >> 16);
+        bytes[2] = (byte) (value >> 8);
+        bytes[3] = (byte) value;
+        this.write_data(offset, bytes);
+    }
+
+    // compares the encoded key stored at offset with key, see KeyEncoding
+    // the block is read in place, nothing is copied or decoded
+    protected int compareKey(int offset, int length, byte[] key) {
+        return compareKey(offset, length, key, 0, key.length);
+    }
+
+    // compares the bytes stored at offset with key[from, to)
+    protected int compareKey(int offset, int length, byte[] key, int from, int to) {
+        if (data != null) {
+            return Arrays.compareUnsigned(data, offset, offset + length, key, from, to);
+        }
+        int n = Math.min(length, to - from);
+        for (int i = 0; i < n; i++) {
+            int diff = (buffer.get(offset + i) & 0xFF) - (key[from + i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - (to - from);
+    }
+
+    // number of leading bytes of key equal to the bytes stored at offset, at most length
+    protected int commonPrefixLength(int offset, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        if (data != null) {
+            int i = Arrays.mismatch(data, offset, offset + n, key, 0, n);
+            return i < 0 ? n : i;
+        }
+        for (int i = 0; i < n; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    protected <T> T decodeKey(int offset, int length, Class<T> typeClass) {
+        if (data != null) {
+            return KeyEncoding.decode(data, offset, length, typeClass);
+        }
+        return KeyEncoding.decode(get_data(offset, length), 0, length, typeClass);
     }
-}
\ No newline at end of file
+}
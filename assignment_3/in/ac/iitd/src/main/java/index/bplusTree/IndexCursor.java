@@ -0,0 +1,79 @@
+package index.bplusTree;
+
+import storage.RecordId;
+
+/*
+    * Streams the entries of a BPlusTreeIndexFile with keys in a range, in key order, opened by
+    * BPlusTreeIndexFile.scan.
+    *     IndexCursor<Integer> cursor = index.scan(100, true, null, false);
+    *     while (cursor.next()) {
+    *         long rid = cursor.getRid();
+    *     }
+    * The first leaf is found by one descent from the root, the cursor then follows the next pointers of
+    * the leaves and stops at the first key past the upper bound. Keys are only decoded by getKey.
+    *
+    * The cursor reads the leaves as it goes, the index must not be modified while it is used. It is not
+    * thread safe.
+ */
+public class IndexCursor<T> {
+
+    private final BPlusTreeIndexFile<T> index;
+
+    // encoded upper bound, null for no upper bound
+    private final byte[] upper;
+    private final boolean upperInclusive;
+
+    private LeafNode<T> leaf;
+    private int position;
+    private boolean done;
+
+    // leaf is the first leaf to read from position on, null if there is nothing to read
+    IndexCursor(BPlusTreeIndexFile<T> index, LeafNode<T> leaf, int position, byte[] upper, boolean upperInclusive) {
+        this.index = index;
+        this.leaf = leaf;
+        // next moves to the first entry
+        this.position = position - 1;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+        this.done = leaf == null;
+    }
+
+    // moves to the next entry in the range, false once there are none left
+    public boolean next() {
+        if (done) {
+            return false;
+        }
+        position++;
+        // 0 ends the leaf chain, block 0 is the metadata block. Leaves can be empty after deletes
+        while (position >= leaf.getNumKeys()) {
+            int next = leaf.getNext();
+            if (next == 0) {
+                done = true;
+                return false;
+            }
+            leaf = index.getLeaf(next);
+            position = 0;
+        }
+        if (upper != null) {
+            int c = leaf.compareKey(position, upper);
+            if (c > 0 || (c == 0 && !upperInclusive)) {
+                done = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public T getKey() {
+        return leaf.getKey(position);
+    }
+
+    // RID of the record of the current entry, see RecordId
+    public long getRid() {
+        return RecordId.make(leaf.getBlockId(position), leaf.getSlot(position));
+    }
+
+    public int getBlockId() {
+        return leaf.getBlockId(position);
+    }
+}
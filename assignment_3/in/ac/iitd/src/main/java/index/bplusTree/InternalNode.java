@@ -1,43 +1,86 @@
 package index.bplusTree;
 
+import java.nio.ByteBuffer;
+
 /*
-    * Internal Node - num Keys | ptr to next free offset | P_1 | len(K_1) | K_1 | P_2 | len(K_2) | K_2 | ... | P_n
+    * Internal Node - num Keys | start of entries | P_0 | slot_1 | slot_2 | ... free ... | entry_2 | entry_1
+    *                    2     |        2         |  4  |   2    |   2    |
+    * entry - len(K_i) | K_i | P_i
+    *             2    |     |  4
+    * slot_i is the offset of the i-th entry in key order, P_i is the child right of K_i and P_0 the leftmost
+    * child. Entries grow from the end of the block, so an insert only shifts the slots after it and search
+    * is a binary search over the slots. Keys are stored encoded, see KeyEncoding, and compared in place.
+    * A key is the key and RID of the first entry right of it, or a prefix of that, so separators stay
+    * distinct however many entries share a key.
     * Only write code where specified
 
     * Remember that each Node is a block in the Index file, thus, P_i is the block_id of the child node
  */
 public class InternalNode<T> extends BlockNode implements TreeNode<T> {
 
+    // offset of the first slot
+    static final int HEADER_SIZE = 8;
+
+    // offset of the start of the entries
+    private static final int ENTRIES_START = 2;
+
     // Class of the key
     Class<T> typeClass;
 
     // Constructor - expects the key, left and right child ids
     public InternalNode(T key, int left_child_id, int right_child_id, Class<T> typeClass) {
 
+        this(left_child_id, typeClass);
+
+        // also calls the insert method
+        this.insert(key, right_child_id);
+        return;
+    }
+
+    // a node with only its first child and no keys yet, the rest is added by append
+    InternalNode(int first_child_id, Class<T> typeClass) {
         super();
         this.typeClass = typeClass;
+        writeShort(0, 0);
+        writeInt(4, first_child_id);
+        writeShort(ENTRIES_START, get_block_capacity());
+    }
 
-        byte[] numKeysBytes = new byte[2];
-        numKeysBytes[0] = 0;
-        numKeysBytes[1] = 0;
-
-        this.write_data(0, numKeysBytes);
+    // rebuilds an internal node from the bytes of its block
+    public InternalNode(ByteBuffer page, Class<T> typeClass) {
+        super(page);
+        this.typeClass = typeClass;
+    }
 
-        byte[] child_1 = new byte[2];
-        child_1[0] = (byte) ((left_child_id >> 8) & 0xFF);
-        child_1[1] = (byte) (left_child_id & 0xFF);
+    // offset of the i-th entry in key order
+    private int entryOffset(int index) {
+        return readShort(HEADER_SIZE + 2 * index);
+    }
 
-        this.write_data(4, child_1);
+    // encoded key i
+    byte[] getKeyBytes(int index) {
+        int offset = entryOffset(index);
+        return this.get_data(offset + 2, readShort(offset));
+    }
 
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 6;
+    public T getKey(int index) {
+        int offset = entryOffset(index);
+        return decodeKey(offset + 2, readShort(offset), this.typeClass);
+    }
 
-        this.write_data(2, nextFreeOffsetBytes);
+    // compares key i with an encoded key
+    private int compareKey(int index, byte[] key) {
+        int offset = entryOffset(index);
+        return compareKey(offset + 2, readShort(offset), key);
+    }
 
-        // also calls the insert method
-        this.insert(key, right_child_id);
-        return;
+    // child i, 0 is left of the first key and i > 0 right of key i - 1
+    public int getChild(int index) {
+        if (index == 0) {
+            return readInt(4);
+        }
+        int offset = entryOffset(index - 1);
+        return readInt(offset + 2 + readShort(offset));
     }
 
    @Override
@@ -45,21 +88,27 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
         int numKeys = getNumKeys();
         T[] keys = (T[]) new Object[numKeys];
 
-        int offset = 6;
-
         for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] keyBytes = this.get_data(offset + 2, keyLength);
-            T nodeKey = convertBytesToT(keyBytes, this.typeClass);
-
-            keys[i] = nodeKey;
-            offset += (2 + keyLength + 2);
+            keys[i] = getKey(i);
         }
 
         return keys;
     }
 
+    // index of the first key > key, the number of keys if there is none
+    private int upperBound(byte[] key) {
+        int low = 0;
+        int high = getNumKeys();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 
     @Override
     public void insert(T key, int right_block_id) {
@@ -67,169 +116,96 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
             return;
         }
         /* Write your code here */
+        insert(KeyEncoding.encode(key, this.typeClass), right_block_id);
+        return;
+    }
+
+    void insert(byte[] key, int right_block_id) {
+        insertAt(upperBound(key), key, right_block_id);
+    }
+
+    // writes a new entry and puts its slot at index, the slots after it move one to the right
+    private void insertAt(int index, byte[] key, int right_block_id) {
         int numKeys = getNumKeys();
-        int offset = 6 ;
-        for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] existingKeyBytes = this.get_data(offset + 2, keyLength);
-            T existingKey = convertBytesToT(existingKeyBytes, this.typeClass);
-            int cmp = compare(existingKey,key,this.typeClass);
-            if (cmp > 0) {
-                break;
-            }
-            offset += ( keyLength + 4);
+        int offset = readShort(ENTRIES_START) - (2 + key.length + 4);
+        if (offset < HEADER_SIZE + 2 * (numKeys + 1)) {
+            throw new IllegalStateException("Internal node is full");
         }
 
-        byte[] new_data = convertTToBytes(key,this.typeClass);
-        int shift_length = new_data.length+4;
+        writeShort(offset, key.length);
+        this.write_data(offset + 2, key);
+        writeInt(offset + 2 + key.length, right_block_id);
 
-        byte[] nextFreeOffset= this.get_data(2,2);
-        int nextoffset = (nextFreeOffset[0] << 8) | (nextFreeOffset[1] & 0xFF);
-        if (nextoffset != offset) {
-            byte[] src = this.get_data(offset, nextoffset - offset);
-            this.write_data(offset + shift_length, src);
+        int slotOffset = HEADER_SIZE + 2 * index;
+        if (index < numKeys) {
+            this.write_data(slotOffset + 2, this.get_data(slotOffset, 2 * (numKeys - index)));
         }
+        writeShort(slotOffset, offset);
 
-        
-        byte[] newDataLengthBytes = new byte[2];
-        newDataLengthBytes[0] = (byte) (new_data.length >> 8);
-        newDataLengthBytes[1] = (byte) new_data.length;
-        this.write_data(offset, newDataLengthBytes);
-        this.write_data(offset + 2, new_data);
-
-        byte[] blockIdBytes = new byte[2];
-        blockIdBytes[0] = (byte) (right_block_id >> 8);
-        blockIdBytes[1] = (byte) right_block_id;
-        this.write_data(offset+new_data.length + 2 , blockIdBytes);
-       
-        int numEntries = getNumKeys() + 1;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numEntries >> 8);
-        numEntriesBytes[1] = (byte) numEntries;
-        this.write_data(0, numEntriesBytes);
-
-        int newOffset = nextoffset+shift_length;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (newOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) newOffset;
-        this.write_data(2, nextFreeOffsetBytes);
-        
-        return;
+        writeShort(0, numKeys + 1);
+        writeShort(ENTRIES_START, offset);
     }
 
-
-    public byte[] splitNode() {
+    // keeps the first half of the keys and returns a new node with the keys after the middle one
+    // the middle key moves up to the parent, it is getKey(getNumKeys() / 2) before the split
+    public InternalNode<T> split() {
         int numKeys = getNumKeys();
-        int offset =  6;
-        for (int i = 0; i < numKeys/2; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            offset += (2 + keyLength + 2);
+        int keep = numKeys / 2;
+        InternalNode<T> right = new InternalNode<>(getChild(keep + 1), this.typeClass);
+        for (int i = keep + 1; i < numKeys; i++) {
+            right.append(getKeyBytes(i), getChild(i + 1));
         }
-        byte[] nextFreeOffset= this.get_data(2,2);
-        int nextoffset = (nextFreeOffset[0] << 8) | (nextFreeOffset[1] & 0xFF);
 
-        byte[] data= this.get_data(offset,nextoffset-offset);
-        int numEntries = (numKeys)/2;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numEntries >> 8);
-        numEntriesBytes[1] = (byte) numEntries;
-        this.write_data(0, numEntriesBytes);
-
-        int newOffset = offset;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (newOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) newOffset;
-        this.write_data(2, nextFreeOffsetBytes);
-        return data;
+        // the kept entries are written again from the end of the block, without the gaps
+        byte[][] keys = new byte[keep][];
+        int[] children = new int[keep];
+        for (int i = 0; i < keep; i++) {
+            keys[i] = getKeyBytes(i);
+            children[i] = getChild(i + 1);
+        }
+        writeShort(0, 0);
+        writeShort(ENTRIES_START, get_block_capacity());
+        for (int i = 0; i < keep; i++) {
+            append(keys[i], children[i]);
+        }
+        return right;
     }
 
     @Override
     public int search(T key) {
-        int numKeys = getNumKeys();
-        int offset = 6;
-        for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] keyBytes = this.get_data(offset + 2, keyLength);
-            T nodeKey = convertBytesToT(keyBytes,this.typeClass);
-
-            int cmp = compare(nodeKey,key,this.typeClass);
-            if (cmp > 0) {
-                byte[] childBytes = this.get_data(offset - 2, 2);
-                return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            }
-            if(cmp == 0){
-                byte[] childBytes = this.get_data(offset+keyLength + 2, 2);
-                return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            }
-            offset += (2 + keyLength + 2);
-        }
+        return search(KeyEncoding.encode(key, this.typeClass));
+    }
 
-        byte[] childBytes = this.get_data(offset - 2, 2);
-        return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
+    // child to look for key in. For a key on its own it is the leftmost subtree with entries of the key, the
+    // entries of key continue in the leaves after it: a separator equal to the key has all of them right of
+    // it, a separator with a RID is greater than the key
+    int search(byte[] key) {
+        return getChild(upperBound(key));
     }
 
+    // child to insert key into, after every equal key
     public int search1(T key) {
-        int numKeys = getNumKeys();
-        int offset = 6;
-        for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-
-            byte[] keyBytes = this.get_data(offset + 2, keyLength);
-            T nodeKey = convertBytesToT(keyBytes,this.typeClass);
-
-            int cmp = compare(nodeKey,key,this.typeClass);
-            if (cmp > 0) {
-                byte[] childBytes = this.get_data(offset - 2, 2);
-                return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            }
-            offset += (2 + keyLength + 2);
-        }
-
-        byte[] childBytes = this.get_data(offset - 2, 2);
-        int a= (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-        return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
+        return search(KeyEncoding.afterKey(KeyEncoding.encode(key, this.typeClass)));
     }
 
-    public void insert2(byte[] data, int keys){
-        int length1= data.length;
-        this.write_data(6,data);
-
-        int numEntries = keys;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numEntries >> 8);
-        numEntriesBytes[1] = (byte) numEntries;
-        this.write_data(0, numEntriesBytes);
-
-        int newOffset = 6+length1;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (newOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) newOffset;
-        this.write_data(2, nextFreeOffsetBytes);
-        return;
+    // true if one more key of keyLength bytes and its child fit into the block
+    boolean fits(int keyLength) {
+        return readShort(ENTRIES_START) - (2 + keyLength + 4) >= HEADER_SIZE + 2 * (getNumKeys() + 1);
     }
 
-
+    // adds key and the child right of it after the last key, keys must be appended in order
+    void append(byte[] key, int child_id) {
+        insertAt(getNumKeys(), key, child_id);
+    }
 
     public int[] getChildren() {
         int numKeys = getNumKeys();
         int[] children = new int[numKeys + 1];
 
         /* Write your code here */
-        int offset = 6;
-        for (int i = 0; i < numKeys; i++) {
-            byte[] childBytes = this.get_data(offset - 2, 2);
-            children[i]= (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-
-            offset += (2 + keyLength + 2);
+        for (int i = 0; i <= numKeys; i++) {
+            children[i] = getChild(i);
         }
-        byte[] childBytes = this.get_data(offset - 2, 2);
-        children[numKeys]= (childBytes[0] << 8) | (childBytes[1] & 0xFF);
 
         return children;
 
@@ -0,0 +1,147 @@
+package index.bplusTree;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+    * Order preserving encoding of index keys - the unsigned byte order of two encoded keys, see compare, is
+    * the order of the keys. Nodes store keys encoded and compare them in place without decoding them.
+    *
+    * Integer - 4 bytes big endian with the sign bit flipped
+    * Float, Double - IEEE bits big endian, all bits flipped for negative values and only the sign bit for
+    *                 the others, which orders them like Float.compare and Double.compare
+    * Boolean - 1 byte, 0 or 1
+    * String - UTF-8 with every 0x00 written as 0x00 0xFF, ended by 0x00 0x00. A key is never a prefix of
+    *          another encoded key, so bytes can follow it and still compare right. Strings are ordered by
+    *          code point, which is String.compareTo except for characters beyond the BMP
+    *
+    * The index is ordered by the key followed by the RID of its record, see withRid, so equal keys are
+    * ordered by RID and every entry has a distinct position. A key on its own is smaller than the key with
+    * any RID and afterKey is greater than all of them, which is how lookups find the first and the last
+    * entry of a key.
+ */
+public final class KeyEncoding {
+
+    private KeyEncoding() {
+    }
+
+    public static byte[] encode(Object key, Class<?> typeClass) {
+        if (typeClass.equals(Integer.class)) {
+            return bigEndian((Integer) key ^ 0x80000000, 4);
+        } else if (typeClass.equals(Boolean.class)) {
+            return new byte[] { (byte) (((Boolean) key) ? 1 : 0) };
+        } else if (typeClass.equals(Float.class)) {
+            int bits = Float.floatToIntBits((Float) key);
+            return bigEndian(bits < 0 ? ~bits : bits ^ 0x80000000, 4);
+        } else if (typeClass.equals(Double.class)) {
+            long bits = Double.doubleToLongBits((Double) key);
+            return bigEndian(bits < 0 ? ~bits : bits ^ 0x8000000000000000L, 8);
+        } else if (typeClass.equals(String.class)) {
+            byte[] utf8 = ((String) key).getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(utf8.length + 2);
+            for (byte b : utf8) {
+                out.write(b);
+                if (b == 0) {
+                    out.write(0xFF);
+                }
+            }
+            out.write(0);
+            out.write(0);
+            return out.toByteArray();
+        } else {
+            throw new IllegalArgumentException("Unsupported data type");
+        }
+    }
+
+    // key encoded in bytes[offset, offset + length), bytes after the key are ignored
+    public static <T> T decode(byte[] bytes, int offset, int length, Class<T> typeClass) {
+        if (typeClass.equals(Integer.class)) {
+            return typeClass.cast((int) readBigEndian(bytes, offset, 4) ^ 0x80000000);
+        } else if (typeClass.equals(Boolean.class)) {
+            return typeClass.cast(bytes[offset] != 0);
+        } else if (typeClass.equals(Float.class)) {
+            int bits = (int) readBigEndian(bytes, offset, 4);
+            return typeClass.cast(Float.intBitsToFloat(bits < 0 ? bits ^ 0x80000000 : ~bits));
+        } else if (typeClass.equals(Double.class)) {
+            long bits = readBigEndian(bytes, offset, 8);
+            return typeClass.cast(Double.longBitsToDouble(bits < 0 ? bits ^ 0x8000000000000000L : ~bits));
+        } else if (typeClass.equals(String.class)) {
+            // a missing terminator ends the string too
+            byte[] utf8 = new byte[length];
+            int n = 0;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                if (bytes[i] == 0) {
+                    if (i + 1 < end && bytes[i + 1] == (byte) 0xFF) {
+                        utf8[n++] = 0;
+                        i++;
+                        continue;
+                    }
+                    break;
+                }
+                utf8[n++] = bytes[i];
+            }
+            return typeClass.cast(new String(utf8, 0, n, StandardCharsets.UTF_8));
+        } else {
+            throw new IllegalArgumentException("Unsupported data type");
+        }
+    }
+
+    // size of the RID after the key, 4 bytes block id and 2 bytes slot
+    static final int RID_SIZE = 6;
+
+    // key followed by the RID block_id | slot, big endian
+    static byte[] withRid(byte[] key, int block_id, int slot) {
+        byte[] bytes = Arrays.copyOf(key, key.length + RID_SIZE);
+        bytes[key.length] = (byte) (block_id >> 24);
+        bytes[key.length + 1] = (byte) (block_id >> 16);
+        bytes[key.length + 2] = (byte) (block_id >> 8);
+        bytes[key.length + 3] = (byte) block_id;
+        bytes[key.length + 4] = (byte) (slot >> 8);
+        bytes[key.length + 5] = (byte) slot;
+        return bytes;
+    }
+
+    // greater than key with any RID and smaller than every greater key, block ids are never negative
+    static byte[] afterKey(byte[] key) {
+        byte[] bytes = Arrays.copyOf(key, key.length + RID_SIZE);
+        Arrays.fill(bytes, key.length, bytes.length, (byte) 0xFF);
+        return bytes;
+    }
+
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    // number of leading bytes a and b have in common
+    static int commonPrefixLength(byte[] a, byte[] b) {
+        int i = Arrays.mismatch(a, b);
+        return i < 0 ? a.length : i;
+    }
+
+    // shortest prefix of right that is still greater than left, left < right
+    // Encoded keys are never a prefix of each other, so the first byte where they differ is enough. The
+    // result is a truncated key that only decodes to the beginning of right, see decode
+    static byte[] separator(byte[] left, byte[] right) {
+        int length = commonPrefixLength(left, right) + 1;
+        return length >= right.length ? right : Arrays.copyOf(right, length);
+    }
+
+    private static byte[] bigEndian(long value, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = size - 1; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>= 8;
+        }
+        return bytes;
+    }
+
+    private static long readBigEndian(byte[] bytes, int offset, int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
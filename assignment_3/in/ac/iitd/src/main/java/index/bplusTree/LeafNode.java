@@ -1,37 +1,160 @@
 package index.bplusTree;
 
+import storage.RecordId;
+
+import java.nio.ByteBuffer;
+
 /*
     * A LeafNode contains keys and block ids.
     * Looks Like -
-    * # entries | prev leafnode | next leafnode | ptr to next free offset | blockid_1 | len(key_1) | key_1 ...
+    * # entries | prev leafnode | next leafnode | start of entries | len(prefix) | prefix | slot_1 | slot_2 | ... free ... | entry_2 | entry_1
+    *     2     |       4       |       4       |        2         |      2      |        |   2    |   2    |
+    * entry - blockid | slot | len(suffix) | suffix
+    *            4    |  2   |      2      |
+    * keys are stored encoded, see KeyEncoding, and compared as bytes in place. Entries are ordered by key
+    * and then by RID, equal keys are ordered by the records they point to
+    * prefix is common to all keys of the node and every entry only stores the rest of its key. A search
+    * compares its key with the prefix once, the binary search then only looks at the suffixes
+    * slot_i is the offset of the i-th entry in key order. Slots grow from the header, entries from the end of
+    * the block, so an insert only shifts the slots after it and search is a binary search over the slots.
+    * blockid and slot are the record id (RID) of the record holding the key, see RecordId
     *
     * Note: Only write code where specified!
  */
 
 public class LeafNode<T> extends BlockNode implements TreeNode<T>{
 
+    // offset of the prefix, the slots follow it
+    static final int HEADER_SIZE = 14;
+
+    // block id and slot of an entry
+    static final int RID_SIZE = 6;
+
+    // offset of the start of the entries
+    private static final int ENTRIES_START = 10;
+
+    // offset of the length of the prefix
+    private static final int PREFIX_LENGTH = 12;
+
     Class<T> typeClass;
 
     public LeafNode(Class<T> typeClass) {
-        
+
         super();
         this.typeClass = typeClass;
 
         // set numEntries to 0
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = 0;
-        numEntriesBytes[1] = 0;
-        this.write_data(0, numEntriesBytes);
+        writeShort(0, 0);
 
-        // set ptr to next free offset to 8
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 8;
-        this.write_data(6, nextFreeOffsetBytes);
+        // no entries yet, they start at the end of the block
+        writeShort(ENTRIES_START, get_block_capacity());
+
+        // and no prefix
+        writeShort(PREFIX_LENGTH, 0);
 
         return;
     }
 
+    // rebuilds a leaf node from the bytes of its block
+    public LeafNode(ByteBuffer page, Class<T> typeClass) {
+        super(page);
+        this.typeClass = typeClass;
+    }
+
+    private int prefixLength() {
+        return readShort(PREFIX_LENGTH);
+    }
+
+    // offset of the first slot
+    private int slotsStart() {
+        return HEADER_SIZE + prefixLength();
+    }
+
+    // offset of the i-th entry in key order
+    private int entryOffset(int index) {
+        return readShort(slotsStart() + 2 * index);
+    }
+
+    private int entrySize(int offset) {
+        return RID_SIZE + 2 + readShort(offset + RID_SIZE);
+    }
+
+    public T getKey(int index) {
+        if (prefixLength() == 0) {
+            int offset = entryOffset(index);
+            return decodeKey(offset + RID_SIZE + 2, readShort(offset + RID_SIZE), this.typeClass);
+        }
+        byte[] key = getKeyBytes(index);
+        return KeyEncoding.decode(key, 0, key.length, this.typeClass);
+    }
+
+    // encoded key of entry i, the prefix followed by the suffix of the entry
+    byte[] getKeyBytes(int index) {
+        int prefixLength = prefixLength();
+        int offset = entryOffset(index);
+        int suffixLength = readShort(offset + RID_SIZE);
+        byte[] key = new byte[prefixLength + suffixLength];
+        System.arraycopy(this.get_data(HEADER_SIZE, prefixLength), 0, key, 0, prefixLength);
+        System.arraycopy(this.get_data(offset + RID_SIZE + 2, suffixLength), 0, key, prefixLength, suffixLength);
+        return key;
+    }
+
+    // key of entry i followed by its RID, see KeyEncoding.withRid
+    byte[] getEntryBytes(int index) {
+        return KeyEncoding.withRid(getKeyBytes(index), getBlockId(index), getSlot(index));
+    }
+
+    // compares the key of entry i with an encoded key, without the RID
+    int compareKey(int index, byte[] key) {
+        int prefixLength = prefixLength();
+        int c = comparePrefix(prefixLength, key);
+        if (c != 0) {
+            return c;
+        }
+        int offset = entryOffset(index);
+        return compareKey(offset + RID_SIZE + 2, readShort(offset + RID_SIZE), key, prefixLength, key.length);
+    }
+
+    // compares the prefix with the beginning of key
+    // a key shorter than the prefix that starts like it is smaller than every key of the node
+    private int comparePrefix(int prefixLength, byte[] key) {
+        if (prefixLength == 0) {
+            return 0;
+        }
+        int length = Math.min(prefixLength, key.length);
+        int c = compareKey(HEADER_SIZE, length, key, 0, length);
+        if (c == 0 && key.length < prefixLength) {
+            return 1;
+        }
+        return c;
+    }
+
+    // compares the suffix and RID of entry i with the rest of key after the prefix, key must start with the
+    // prefix. key is a key with or without a RID, or a part of one
+    private int compareSuffix(int index, int prefixLength, byte[] key) {
+        int offset = entryOffset(index);
+        int suffixLength = readShort(offset + RID_SIZE);
+        int keyEnd = prefixLength + suffixLength;
+        int c = compareKey(offset + RID_SIZE + 2, suffixLength, key, prefixLength, Math.min(keyEnd, key.length));
+        if (c != 0) {
+            return c;
+        }
+        if (key.length <= keyEnd) {
+            // the entry is the key followed by a RID
+            return 1;
+        }
+        // block id and slot are stored big endian, like withRid writes them
+        return compareKey(offset, RID_SIZE, key, keyEnd, key.length);
+    }
+
+    public int getBlockId(int index) {
+        return readInt(entryOffset(index));
+    }
+
+    public int getSlot(int index) {
+        return readShort(entryOffset(index) + 4);
+    }
+
     @Override
     public T[] getKeys() {
 
@@ -40,14 +163,8 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
 
         /* Write your code here */
 
-        int offset = 10;
         for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] keyBytes = this.get_data(offset + 2, keyLength);
-            T nodeKey = convertBytesToT(keyBytes, this.typeClass);
-            keys[i] = nodeKey;
-            offset += (2 + keyLength + 2); 
+            keys[i] = getKey(i);
         }
         return keys;
     }
@@ -59,148 +176,250 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
         int[] block_ids = new int[numKeys];
 
         /* Write your code here */
-        int offset = 10;
         for (int i = 0; i < numKeys; i++) {
-            byte[] childBytes = this.get_data(offset - 2, 2);
-            block_ids[i]= (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            offset += (2 + keyLength + 2);
+            block_ids[i] = getBlockId(i);
         }
         return block_ids;
 
     }
 
-    @Override
-    public void insert(T key, int block_id) {
+    public int[] getSlots() {
+
         int numKeys = getNumKeys();
-        int offset = 8;
+        int[] slots = new int[numKeys];
         for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] existingKeyBytes = this.get_data(offset + 4, keyLength);
-            T existingKey = convertBytesToT(existingKeyBytes, this.typeClass);
-            int cmp = compare(existingKey,key,this.typeClass);
-            if (cmp > 0) {
-                break;
-            }
-            offset += ( keyLength + 4);
+            slots[i] = getSlot(i);
         }
+        return slots;
+    }
+
+    public T getFirstKey() {
+        return getKey(0);
+    }
+
+    public int getPrev() {
+        return readInt(2);
+    }
+
+    public int getNext() {
+        return readInt(6);
+    }
 
-        byte[] new_data = convertTToBytes(key,this.typeClass);
-        int shift_length = new_data.length+4;
+    public void setPrev(int block_id) {
+        writeInt(2, block_id);
+    }
+
+    public void setNext(int block_id) {
+        writeInt(6, block_id);
+    }
 
-        byte[] nextFreeOffset= this.get_data(6,2);
-        int nextoffset = (nextFreeOffset[0] << 8) | (nextFreeOffset[1] & 0xFF);
-        if (nextoffset != offset) {
-            byte[] src = this.get_data(offset, nextoffset - offset);
-            this.write_data(offset + shift_length, src);
+    // index of the first entry with a key >= key, the number of entries if there is none
+    public int lowerBound(T key) {
+        return lowerBound(KeyEncoding.encode(key, this.typeClass));
+    }
+
+    // index of the first entry >= key, for a key with or without a RID
+    int lowerBound(byte[] key) {
+        int prefixLength = prefixLength();
+        int c = comparePrefix(prefixLength, key);
+        if (c != 0) {
+            return c > 0 ? 0 : getNumKeys();
+        }
+        int low = 0;
+        int high = getNumKeys();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareSuffix(mid, prefixLength, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
+        return low;
+    }
 
-        byte[] blockIdBytes = new byte[2];
-        blockIdBytes[0] = (byte) (block_id >> 8);
-        blockIdBytes[1] = (byte) block_id;
-        this.write_data(offset, blockIdBytes);
+    // index of the first entry with a key > key, the number of entries if there is none
+    public int upperBound(T key) {
+        return lowerBound(KeyEncoding.afterKey(KeyEncoding.encode(key, this.typeClass)));
+    }
 
-        byte[] newDataLengthBytes = new byte[2];
-        newDataLengthBytes[0] = (byte) (new_data.length >> 8);
-        newDataLengthBytes[1] = (byte) new_data.length;
-        this.write_data(offset + 2, newDataLengthBytes);
+    // index of the first entry > key, for a key with or without a RID
+    int upperBound(byte[] key) {
+        int prefixLength = prefixLength();
+        int c = comparePrefix(prefixLength, key);
+        if (c != 0) {
+            return c > 0 ? 0 : getNumKeys();
+        }
+        int low = 0;
+        int high = getNumKeys();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareSuffix(mid, prefixLength, key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 
-        this.write_data(offset + 4, new_data);
+    // the slot of the record is not known, see RecordId.NO_SLOT
+    @Override
+    public void insert(T key, int block_id) {
+        insert(key, block_id, RecordId.NO_SLOT);
+    }
 
-        int numEntries = getNumKeys() + 1;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numEntries >> 8);
-        numEntriesBytes[1] = (byte) numEntries;
-        this.write_data(0, numEntriesBytes);
+    // entries of equal keys are kept in RID order
+    public void insert(T key, int block_id, int slot) {
+        insert(KeyEncoding.encode(key, this.typeClass), block_id, slot);
+    }
 
-        int newOffset = nextoffset+shift_length;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (newOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) newOffset;
-        this.write_data(6, nextFreeOffsetBytes);
-        
-        return;
+    void insert(byte[] key, int block_id, int slot) {
+        // a key that does not start with the prefix shortens it, the entries are written again
+        int prefixLength = prefixLength();
+        int common = commonPrefixLength(HEADER_SIZE, prefixLength, key);
+        if (common < prefixLength) {
+            rewrite(getNumKeys(), common);
+        }
+        insertAt(upperBound(KeyEncoding.withRid(key, block_id, slot)), key, block_id, slot);
     }
 
+    // writes a new entry and puts its slot at index, the slots after it move one to the right
+    // key must start with the prefix, only the rest of it is stored
+    private void insertAt(int index, byte[] key, int block_id, int slot) {
+        int numKeys = getNumKeys();
+        int prefixLength = prefixLength();
+        int slotsStart = HEADER_SIZE + prefixLength;
+        int suffixLength = key.length - prefixLength;
+        int offset = readShort(ENTRIES_START) - (RID_SIZE + 2 + suffixLength);
+        if (offset < slotsStart + 2 * (numKeys + 1)) {
+            throw new IllegalStateException("Leaf node is full");
+        }
+
+        writeInt(offset, block_id);
+        writeShort(offset + 4, slot);
+        writeShort(offset + RID_SIZE, suffixLength);
+        this.write_data(offset + RID_SIZE + 2, key, prefixLength, suffixLength);
+
+        int slotOffset = slotsStart + 2 * index;
+        if (index < numKeys) {
+            this.write_data(slotOffset + 2, this.get_data(slotOffset, 2 * (numKeys - index)));
+        }
+        writeShort(slotOffset, offset);
 
+        writeShort(0, numKeys + 1);
+        writeShort(ENTRIES_START, offset);
+    }
 
     @Override
     public int search(T key) {
 
         /* Write your code here */
-        int numKeys = getNumKeys();
-        int offset = 10;
-        for (int i = 0; i < numKeys; i++) {
-            byte[] keyLengthBytes = this.get_data(offset, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            byte[] keyBytes = this.get_data(offset + 2, keyLength);
-            T nodeKey = convertBytesToT(keyBytes,this.typeClass);
+        return search(KeyEncoding.encode(key, this.typeClass));
+    }
 
-            int cmp = compare(nodeKey,key,this.typeClass);
-            if (cmp == 0) {
-                byte[] childBytes = this.get_data(offset - 2, 2);
-                return (childBytes[0] << 8) | (childBytes[1] & 0xFF);
-            } 
-            offset += (2 + keyLength + 2);
+    // block id of the first entry of key in this leaf, -1 if there is none
+    int search(byte[] key) {
+        int index = lowerBound(key);
+        if (index < getNumKeys() && compareKey(index, key) == 0) {
+            return getBlockId(index);
         }
 
         return -1;
     }
 
-    public byte[] splitleaf() {
+    public void setRid(int index, int block_id, int slot) {
+        int offset = entryOffset(index);
+        writeInt(offset, block_id);
+        writeShort(offset + 4, slot);
+    }
+
+    // removes entry i, the leaf is not merged with its neighbours even if it becomes empty
+    public void remove(int index) {
+        int numKeys = getNumKeys();
+        int slotsStart = slotsStart();
+        int offset = entryOffset(index);
+        int length = entrySize(offset);
+        int start = readShort(ENTRIES_START);
+
+        // closes the gap, the entries before it in the block move towards the end
+        if (offset > start) {
+            this.write_data(start + length, this.get_data(start, offset - start));
+        }
+        for (int i = 0; i < numKeys; i++) {
+            int other = entryOffset(i);
+            if (other < offset) {
+                writeShort(slotsStart + 2 * i, other + length);
+            }
+        }
+
+        int slotOffset = slotsStart + 2 * index;
+        if (index < numKeys - 1) {
+            this.write_data(slotOffset, this.get_data(slotOffset + 2, 2 * (numKeys - index - 1)));
+        }
+        writeShort(0, numKeys - 1);
+        writeShort(ENTRIES_START, start + length);
+    }
+
+    // keeps the first half of the entries and moves the second half to right, an empty leaf
+    // each half gets the longest prefix of its own keys, keys are sorted so that is the one of its first
+    // and last key
+    public void split(LeafNode<T> right) {
 
         /* Write your code here */
         int numKeys = getNumKeys();
-        int offset =  8;
-        for (int i = 0; i < (numKeys)/2; i++) {
-            byte[] keyLengthBytes = this.get_data(offset+2, 2);
-            int keyLength = (keyLengthBytes[0] << 8) | (keyLengthBytes[1] & 0xFF);
-            offset += (2 + keyLength + 2);
-        }
-        byte[] nextFreeOffset= this.get_data(6,2);
-        int nextoffset = (nextFreeOffset[0] << 8) | (nextFreeOffset[1] & 0xFF);
-
-        byte[] data= this.get_data(offset,nextoffset-offset);
-
-        int numEntries = (numKeys)/2;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numEntries >> 8);
-        numEntriesBytes[1] = (byte) numEntries;
-        this.write_data(0, numEntriesBytes);
-
-        int newOffset = offset;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (newOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) newOffset;
-        this.write_data(6, nextFreeOffsetBytes);
-        
-        return data;
-    }
-
-    public void insert1(byte[] data, int keys, int prev_pointer, byte[] next_pointer){
-        int length1= data.length;
-        this.write_data(8,data);
-        int numEntries = keys;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numEntries >> 8);
-        numEntriesBytes[1] = (byte) numEntries;
-        this.write_data(0, numEntriesBytes);
-
-        byte[] prevBytes = new byte[2];
-        prevBytes[0] = (byte) (prev_pointer >> 8);
-        prevBytes[1] = (byte) prev_pointer;
-        this.write_data(2, prevBytes);
-        this.write_data(4,next_pointer);
-
-        int newOffset = 8+length1;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (newOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) newOffset;
-        this.write_data(6, nextFreeOffsetBytes);
-        return;
+        int keep = numKeys / 2;
+        byte[] first = getKeyBytes(keep);
+        right.setPrefix(first, KeyEncoding.commonPrefixLength(first, getKeyBytes(numKeys - 1)));
+        for (int i = keep; i < numKeys; i++) {
+            right.append(getKeyBytes(i), getBlockId(i), getSlot(i));
+        }
+        rewrite(keep, keep == 0 ? 0 : KeyEncoding.commonPrefixLength(getKeyBytes(0), getKeyBytes(keep - 1)));
+    }
+
+    // writes the first count entries again from the end of the block, without the gaps and with a prefix
+    // of prefixLength bytes of their keys. The other entries are dropped
+    private void rewrite(int count, int prefixLength) {
+        byte[][] keys = new byte[count][];
+        int[] block_ids = new int[count];
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = getKeyBytes(i);
+            block_ids[i] = getBlockId(i);
+            slots[i] = getSlot(i);
+        }
+        writeShort(0, 0);
+        writeShort(ENTRIES_START, get_block_capacity());
+        // an empty node has no prefix
+        if (count == 0) {
+            setPrefix(new byte[0], 0);
+        } else {
+            setPrefix(keys[0], prefixLength);
+        }
+        for (int i = 0; i < count; i++) {
+            append(keys[i], block_ids[i], slots[i]);
+        }
     }
 
-    
+    // the first length bytes of key become the prefix, only for a node without entries
+    void setPrefix(byte[] key, int length) {
+        writeShort(PREFIX_LENGTH, length);
+        this.write_data(HEADER_SIZE, key, 0, length);
+    }
+
+    // true if one more entry with key fits into the block
+    // a key that shortens the prefix makes every entry longer by what the prefix loses
+    boolean fits(byte[] key) {
+        int numKeys = getNumKeys();
+        int prefixLength = prefixLength();
+        int common = commonPrefixLength(HEADER_SIZE, prefixLength, key);
+        int entries = get_block_capacity() - readShort(ENTRIES_START) + numKeys * (prefixLength - common);
+        return get_block_capacity() - entries - (RID_SIZE + 2 + key.length - common)
+                >= HEADER_SIZE + common + 2 * (numKeys + 1);
+    }
+
+    // adds an entry after the last one, entries must be appended in key order, see BPlusTreeIndexFile.bulkLoad
+    void append(byte[] key, int block_id, int slot) {
+        insertAt(getNumKeys(), key, block_id, slot);
+    }
 }
@@ -0,0 +1,127 @@
+package index.bplusTree;
+
+import java.util.Arrays;
+
+/*
+    * Decoded internal nodes of one BPlusTreeIndexFile, so a descent does not read the root and the upper
+    * levels from their blocks again on every lookup.
+    * A decoded node holds its keys back to back in one array and its children as an int array. The prefix
+    * all its keys share is compared once per search, then the next 8 bytes of each key are held as an
+    * unsigned big endian long, so most comparisons are one Long.compareUnsigned, e.g. all of them for
+    * Integer keys. The bytes are only compared when those 8 are equal.
+    *
+    * The cache is direct mapped, block i can only be in entry i % capacity. Lookups need no lock and never
+    * allocate. A node only takes the entry of a node deeper in the tree, so the upper levels stay cached
+    * and the nodes of a large lowest level do not keep evicting each other, those are searched in their
+    * blocks. The index calls invalidate for every write to a block, see BPlusTreeIndexFile.block_modified,
+    * so a cached node is never older than its block. Nodes are immutable, the table lock keeps writers
+    * away from readers.
+ */
+final class NodeCache {
+
+    static final class Node {
+        final int blockId;
+        // number of nodes above it when it was cached
+        final int depth;
+        private final byte[] keys;
+        // key i is keys[offsets[i], offsets[i + 1])
+        private final int[] offsets;
+        // bytes all keys start with, keys[0, prefixLength)
+        private final int prefixLength;
+        private final long[] heads;
+        private final int[] children;
+
+        private Node(int blockId, int depth, InternalNode<?> node) {
+            this.blockId = blockId;
+            this.depth = depth;
+            int numKeys = node.getNumKeys();
+            byte[][] bytes = new byte[numKeys][];
+            int total = 0;
+            for (int i = 0; i < numKeys; i++) {
+                bytes[i] = node.getKeyBytes(i);
+                total += bytes[i].length;
+            }
+            keys = new byte[total];
+            offsets = new int[numKeys + 1];
+            heads = new long[numKeys];
+            children = new int[numKeys + 1];
+            // keys are sorted, the first and the last one share the prefix of all of them
+            prefixLength = numKeys == 0 ? 0 : KeyEncoding.commonPrefixLength(bytes[0], bytes[numKeys - 1]);
+            children[0] = node.getChild(0);
+            for (int i = 0; i < numKeys; i++) {
+                System.arraycopy(bytes[i], 0, keys, offsets[i], bytes[i].length);
+                offsets[i + 1] = offsets[i] + bytes[i].length;
+                heads[i] = head(bytes[i], prefixLength);
+                children[i + 1] = node.getChild(i + 1);
+            }
+        }
+
+        // same as InternalNode.search(byte[])
+        int search(byte[] key) {
+            int p = prefixLength;
+            int c = Arrays.compareUnsigned(keys, 0, p, key, 0, Math.min(p, key.length));
+            if (c != 0 || key.length < p) {
+                // a key that is a part of the prefix is smaller than all keys
+                return c < 0 ? children[heads.length] : children[0];
+            }
+            long head = head(key, p);
+            int low = 0;
+            int high = heads.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                c = Long.compareUnsigned(heads[mid], head);
+                if (c == 0) {
+                    c = Arrays.compareUnsigned(keys, offsets[mid] + p, offsets[mid + 1], key, p, key.length);
+                }
+                if (c <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return children[low];
+        }
+    }
+
+    // 8 bytes of key from offset big endian, missing bytes are 0
+    private static long head(byte[] key, int offset) {
+        long head = 0;
+        int n = Math.min(8, key.length - offset);
+        for (int i = 0; i < n; i++) {
+            head |= (long) (key[offset + i] & 0xFF) << (56 - 8 * i);
+        }
+        return head;
+    }
+
+    private final Node[] nodes;
+
+    NodeCache(int capacity) {
+        nodes = new Node[capacity];
+    }
+
+    // the decoded node of blockId, null if it is not cached
+    Node get(int blockId) {
+        Node node = nodes[blockId % nodes.length];
+        return node != null && node.blockId == blockId ? node : null;
+    }
+
+    // caches node at depth unless its entry holds a node nearer the root, null if it is not cached
+    Node put(int blockId, int depth, InternalNode<?> node) {
+        int i = blockId % nodes.length;
+        Node old = nodes[i];
+        if (old != null && old.depth <= depth) {
+            return null;
+        }
+        Node decoded = new Node(blockId, depth, node);
+        nodes[i] = decoded;
+        return decoded;
+    }
+
+    void invalidate(int blockId) {
+        int i = blockId % nodes.length;
+        Node node = nodes[i];
+        if (node != null && node.blockId == blockId) {
+            nodes[i] = null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package manager;
+
+import org.apache.calcite.rel.type.RelDataType;
+import storage.Block;
+import storage.File;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+    * Loads the rows of a CSV file into a relational File, used by StorageManager.loadFile.
+    * The lines after the header are split into chunks of about CHUNK_SIZE bytes, each ending at a line end.
+    * Workers map the chunks and encode their lines with a CsvScanner into blocks of their own, and the
+    * blocks are appended to the file in chunk order, so rows keep their order in the file.
+    * Chunks depend only on the file and not on the number of workers, so a CSV file always gives the same
+    * blocks. Only the last block of a chunk may be left partly empty. Files of one chunk are loaded on
+    * the calling thread.
+ */
+class CsvLoader {
+
+    static final int CHUNK_SIZE = 4 << 20;
+
+    private final FileChannel channel;
+    private final List<RelDataType> typeList;
+
+    // offset of the first line after the header
+    private long data_start;
+
+    CsvLoader(String csvFile, List<RelDataType> typeList) throws IOException {
+        this.channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ);
+        this.typeList = typeList;
+    }
+
+    // the first line of the file, null if the file is empty
+    String read_header() throws IOException {
+        data_start = next_line(0);
+        if(data_start == 0){
+            return null;
+        }
+        byte[] header = read(0, data_start);
+        int length = header.length;
+        while(length > 0 && (header[length - 1] == '\n' || header[length - 1] == '\r')){
+            length--;
+        }
+        return new String(header, 0, length);
+    }
+
+    // loads every line after the header into f, the schema block must already be in f
+    void load(File f, TableSchema schema) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        for(long start = data_start; start < size; ){
+            long end = next_line(Math.min(start + CHUNK_SIZE, size) - 1);
+            chunks.add(new long[] { start, end });
+            start = end;
+        }
+
+        if(chunks.size() <= 1){
+            for(long[] chunk : chunks){
+                append(f, load_chunk(chunk[0], chunk[1], schema));
+            }
+            return;
+        }
+
+        int workers = Math.min(chunks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "csv-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // at most two chunks per worker are held in memory
+            ArrayDeque<Future<List<Block>>> pending = new ArrayDeque<>();
+            int next = 0;
+            while(next < chunks.size() || !pending.isEmpty()){
+                while(next < chunks.size() && pending.size() < 2 * workers){
+                    long[] chunk = chunks.get(next++);
+                    pending.add(pool.submit(() -> load_chunk(chunk[0], chunk[1], schema)));
+                }
+                append(f, pending.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private static void append(File f, List<Block> blocks) {
+        for(Block block : blocks){
+            f.add_block(block);
+        }
+    }
+
+    // blocks holding the rows of the lines in [start, end)
+    private List<Block> load_chunk(long start, long end, TableSchema schema) throws IOException {
+        RecordEncoder encoder = new RecordEncoder(schema);
+        CsvScanner scanner = new CsvScanner(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), typeList, encoder);
+
+        List<Block> blocks = new ArrayList<>();
+        Block block = null;
+
+        int length;
+        while((length = scanner.next()) != -1){
+            if(block != null && File.append_record(block, encoder.get_buffer(), length) != -1){
+                continue;
+            }
+            // records that do not fit into an empty block are dropped
+            Block next = new Block();
+            if(File.append_record(next, encoder.get_buffer(), length) != -1){
+                block = next;
+                blocks.add(block);
+            }
+        }
+        return blocks;
+    }
+
+    private byte[] read(long start, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        while(bytes.hasRemaining()){
+            if(channel.read(bytes, start + bytes.position()) == -1){
+                break;
+            }
+        }
+        return bytes.array();
+    }
+
+    // offset after the first '\n' at or after position, the size of the file if there is none
+    private long next_line(long position) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(4096);
+        long size = channel.size();
+        while(position < size){
+            bytes.clear();
+            int n = channel.read(bytes, position);
+            if(n <= 0){
+                break;
+            }
+            for(int i = 0; i < n; i++){
+                if(bytes.get(i) == '\n'){
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,283 @@
+package manager;
+
+import Utils.CsvRowConverter;
+import au.com.bytecode.opencsv.CSVParser;
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    * Reads the lines of a CSV file from its raw bytes, e.g. a mapped chunk of it, and encodes each line
+    * straight into a RecordEncoder. Fields are copied once, into a scratch array, and numbers are parsed
+    * from the bytes without making Strings or boxing them.
+    *
+    * Lines are split on '\n', a '\r' before it is dropped. A field is either unquoted, without any '"' or
+    * '\\', or quoted, with "" standing for one quote and the closing quote followed by ',' or the line end.
+    * Any other line - escapes, stray quotes, a different number of fields - is parsed with opencsv and
+    * CsvRowConverter like before, so every line gives the same record as the String based path.
+ */
+class CsvScanner {
+
+    // exact powers of ten, as double up to 1e22 and as float up to 1e10
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for(int i = 1; i < POW10.length; i++){
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final ByteBuffer input;
+    private final List<RelDataType> typeList;
+    private final RecordEncoder encoder;
+
+    // schema position and type tag of each CSV column
+    private final int[] positions;
+    private final int[] types;
+
+    // for lines that need the String based path
+    private final CSVParser parser = new CSVParser();
+    private final Object[] row;
+
+    // bytes of the current field, quotes removed
+    private byte[] field = new byte[256];
+
+    private int position;
+
+    // the number parsed by parse_decimal - sign, digits without the point, digits after the point
+    private boolean negative;
+    private long mantissa;
+    private int scale;
+
+    CsvScanner(ByteBuffer input, List<RelDataType> typeList, RecordEncoder encoder) {
+        this.input = input;
+        this.typeList = typeList;
+        this.encoder = encoder;
+        this.positions = TableSchema.schema_positions(typeList);
+        this.types = new int[typeList.size()];
+        for(int i = 0; i < types.length; i++){
+            types[i] = TableSchema.type_of(typeList.get(i));
+        }
+        this.row = new Object[typeList.size()];
+        this.position = input.position();
+    }
+
+    // encodes the next line, returns the length of its record, -1 once there are no more lines
+    int next() throws IOException {
+        int limit = input.limit();
+        if(position >= limit){
+            return -1;
+        }
+        int start = position;
+        int end = start;
+        while(end < limit && input.get(end) != '\n'){
+            end++;
+        }
+        position = end < limit ? end + 1 : end;
+        if(end > start && input.get(end - 1) == '\r'){
+            end--;
+        }
+
+        if(encode_line(start, end)){
+            return encoder.finish();
+        }
+        return encode_parsed(start, end);
+    }
+
+    // false if the line has to go through encode_parsed
+    private boolean encode_line(int start, int end) {
+        encoder.begin();
+        int p = start;
+        for(int i = 0; i < types.length; i++){
+            if(i > 0){
+                if(p >= end){
+                    return false;
+                }
+                p++; // ','
+            }
+
+            int length = 0;
+            if(p < end && input.get(p) == '"'){
+                // a line starting with "" depends on state opencsv keeps from the line before
+                if(p == start && p + 1 < end && input.get(p + 1) == '"'){
+                    return false;
+                }
+                p++;
+                while(true){
+                    if(p >= end){
+                        return false;
+                    }
+                    byte b = input.get(p++);
+                    if(b == '"'){
+                        if(p < end && input.get(p) == '"'){
+                            p++;
+                        } else {
+                            break;
+                        }
+                    } else if(b == '\\' || b == '\r'){
+                        return false;
+                    }
+                    store(length++, b);
+                }
+                if(p < end && input.get(p) != ','){
+                    return false;
+                }
+            } else {
+                while(p < end){
+                    byte b = input.get(p);
+                    if(b == ','){
+                        break;
+                    }
+                    if(b == '"' || b == '\\' || b == '\r'){
+                        return false;
+                    }
+                    store(length++, b);
+                    p++;
+                }
+            }
+            if(!put_field(positions[i], types[i], length)){
+                return false;
+            }
+        }
+        return p == end;
+    }
+
+    private void store(int index, byte b) {
+        if(index == field.length){
+            field = Arrays.copyOf(field, 2 * field.length);
+        }
+        field[index] = b;
+    }
+
+    // same value CsvRowConverter.convert gives for the field, empty numbers are null
+    // false for numbers in any other form, the whole line then goes through encode_parsed, which also
+    // makes sure a bad number throws only if opencsv accepts the line
+    private boolean put_field(int column, int type, int length) {
+        if(type == TableSchema.VARCHAR){
+            if(is_ascii(length)){
+                encoder.put_bytes(column, field, 0, length);
+            } else {
+                encoder.put_string(column, new String(field, 0, length));
+            }
+            return true;
+        }
+        if(length == 0){
+            encoder.put_null(column);
+            return true;
+        }
+        switch (type) {
+            case TableSchema.INTEGER: {
+                long value = parse_long(length, 9);
+                if(value == Long.MIN_VALUE){
+                    return false;
+                }
+                encoder.put_int(column, (int) value);
+                return true;
+            }
+            case TableSchema.DOUBLE: {
+                if(!parse_decimal(length, 15, 22)){
+                    return false;
+                }
+                double value = mantissa / POW10[scale];
+                encoder.put_double(column, negative ? -value : value);
+                return true;
+            }
+            case TableSchema.FLOAT: {
+                if(!parse_decimal(length, 7, 10)){
+                    return false;
+                }
+                float value = (float) mantissa / (float) POW10[scale];
+                encoder.put_float(column, negative ? -value : value);
+                return true;
+            }
+            case TableSchema.BOOLEAN:
+                // Boolean.parseBoolean
+                encoder.put_boolean(column, length == 4 && (field[0] | 0x20) == 't' && (field[1] | 0x20) == 'r'
+                        && (field[2] | 0x20) == 'u' && (field[3] | 0x20) == 'e');
+                return true;
+            default:
+                throw new RuntimeException("Unsupported type");
+        }
+    }
+
+    private boolean is_ascii(int length) {
+        for(int i = 0; i < length; i++){
+            if(field[i] < 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // [+-]digits with at most max_digits digits, Long.MIN_VALUE for anything else
+    private long parse_long(int length, int max_digits) {
+        int i = 0;
+        boolean negative = false;
+        if(field[0] == '-' || field[0] == '+'){
+            negative = field[0] == '-';
+            i++;
+        }
+        if(i == length || length - i > max_digits){
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for(; i < length; i++){
+            int digit = field[i] - '0';
+            if(digit < 0 || digit > 9){
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // [+-]digits[.digits] with at most max_digits digits and max_scale of them after the point, false for
+    // anything else. Digits and power of ten are then both exact, so one division rounds like parseDouble
+    private boolean parse_decimal(int length, int max_digits, int max_scale) {
+        int i = 0;
+        negative = false;
+        if(field[0] == '-' || field[0] == '+'){
+            negative = field[0] == '-';
+            i++;
+        }
+        mantissa = 0;
+        scale = -1;
+        int digits = 0;
+        for(; i < length; i++){
+            int b = field[i];
+            if(b == '.' && scale == -1){
+                scale = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if(digit < 0 || digit > 9){
+                return false;
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if(scale != -1){
+                scale++;
+            }
+        }
+        scale = Math.max(scale, 0);
+        return digits > 0 && digits <= max_digits && scale <= max_scale;
+    }
+
+    // the String based path, as loadFile did it before
+    private int encode_parsed(int start, int end) throws IOException {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer line = input.duplicate();
+        line.position(start);
+        line.get(bytes);
+        String[] parsedLine = parser.parseLine(new String(bytes));
+
+        // fields are put in schema order, missing trailing fields are null
+        for(int i = 0; i < row.length; i++) {
+            row[positions[i]] = i < parsedLine.length ? CsvRowConverter.convert(typeList.get(i), parsedLine[i]) : null;
+        }
+        return encoder.encode(row);
+    }
+}
@@ -0,0 +1,127 @@
+package manager;
+
+import storage.DB;
+import storage.RecordId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+    * The non null values of some columns of a table, each with the RID of its record, read in one pass
+    * over the blocks of the table to bulk load an index per column, see StorageManager.create_indexes.
+    *
+    * Ranges of blocks are read in parallel by a fork join pool. The keys of two neighbouring ranges are
+    * concatenated left to right, so the keys of each column end up in RID order, like a serial scan.
+ */
+class IndexKeys {
+
+    // blocks read by one task, more are split in two
+    private static final int BLOCKS_PER_TASK = 16;
+
+    private final List<Object>[] keys;
+    private long[][] rids;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private IndexKeys(int num_columns) {
+        keys = new List[num_columns];
+        rids = new long[num_columns][];
+        for (int i = 0; i < num_columns; i++) {
+            keys[i] = new ArrayList<>();
+            rids[i] = new long[64];
+        }
+    }
+
+    // keys of columns (schema columns) of the table in file file_id
+    static IndexKeys extract(DB db, int file_id, TableSchema schema, int[] columns) {
+        // block 0 holds the schema
+        return ForkJoinPool.commonPool().invoke(new Extract(db, file_id, schema, columns, 1, db.get_num_blocks(file_id)));
+    }
+
+    // keys of the i-th column, rids of those keys are get_rids(i)[0 .. size)
+    List<Object> get_keys(int i) {
+        return keys[i];
+    }
+
+    long[] get_rids(int i) {
+        return rids[i];
+    }
+
+    private void add(int i, Object key, long rid) {
+        int size = keys[i].size();
+        if (size == rids[i].length) {
+            rids[i] = Arrays.copyOf(rids[i], 2 * size);
+        }
+        rids[i][size] = rid;
+        keys[i].add(key);
+    }
+
+    // appends the keys of the blocks right after this range
+    private void append(IndexKeys other) {
+        for (int i = 0; i < keys.length; i++) {
+            int size = keys[i].size();
+            int other_size = other.keys[i].size();
+            if (size + other_size > rids[i].length) {
+                rids[i] = Arrays.copyOf(rids[i], Math.max(size + other_size, 2 * rids[i].length));
+            }
+            System.arraycopy(other.rids[i], 0, rids[i], size, other_size);
+            keys[i].addAll(other.keys[i]);
+        }
+    }
+
+    // reads blocks [from, to)
+    @SuppressWarnings("serial")
+    private static class Extract extends RecursiveTask<IndexKeys> {
+        private final DB db;
+        private final int file_id;
+        private final TableSchema schema;
+        private final int[] columns;
+        private final int from;
+        private final int to;
+
+        Extract(DB db, int file_id, TableSchema schema, int[] columns, int from, int to) {
+            this.db = db;
+            this.file_id = file_id;
+            this.schema = schema;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IndexKeys compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                Extract right = new Extract(db, file_id, schema, columns, middle, to);
+                right.fork();
+                IndexKeys keys = new Extract(db, file_id, schema, columns, from, middle).compute();
+                keys.append(right.join());
+                return keys;
+            }
+
+            IndexKeys keys = new IndexKeys(columns.length);
+            byte[] scratch = new byte[4096];
+            for (int block_id = from; block_id < to; block_id++) {
+                ByteBuffer data = db.get_view(file_id, block_id);
+                int numRecords = (data.get(0) << 8) | (data.get(1) & 0xFF);
+                for (int slot = 0; slot < numRecords; slot++) {
+                    // deleted record, see File.DEAD_SLOT
+                    if ((data.get(2*slot+2) & 0x80) != 0) {
+                        continue;
+                    }
+                    int recordoffset = (data.get(2*slot+2) << 8) | (data.get(2*slot+3) & 0xFF);
+                    for (int i = 0; i < columns.length; i++) {
+                        Object value = schema.decode_column(data, recordoffset, columns[i], scratch);
+                        if (value != null) {
+                            keys.add(i, value, RecordId.make(block_id, slot));
+                        }
+                    }
+                }
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package manager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+    * Encodes rows of one table into its record layout, see TableSchema.
+    * The record is written into a buffer owned by the encoder and reused for every row, so encoding
+    * allocates nothing except for strings with non ASCII characters. The bytes are valid until the next
+    * call to encode - copy them out, or pass buffer and length straight to File.add_record_to_last_block.
+    * Fields can also be put one at a time - begin, one put per column, finish. Var columns must be put in
+    * schema order, fixed ones in any order. An encoder is not thread safe, use one per thread.
+ */
+public class RecordEncoder {
+
+    private final TableSchema schema;
+
+    private byte[] buffer;
+    private ByteBuffer fields;
+
+    // end of the var field data written so far
+    private int end;
+
+    public RecordEncoder(TableSchema schema) {
+        this.schema = schema;
+        allocate(4096);
+    }
+
+    private void allocate(int size) {
+        buffer = buffer == null ? new byte[size] : Arrays.copyOf(buffer, size);
+        fields = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // the record written by the last call to encode
+    public byte[] get_buffer() {
+        return buffer;
+    }
+
+    // encodes a row in schema order, returns the length of the record
+    public int encode(Object[] row) {
+        begin();
+        for(int i = 0; i < schema.get_num_columns(); i++){
+            Object value = row[i];
+            if(value == null){
+                put_null(i);
+                continue;
+            }
+            switch (schema.get_type(i)) {
+                case TableSchema.VARCHAR:
+                    put_string(i, (String) value);
+                    break;
+                case TableSchema.INTEGER:
+                    put_int(i, (Integer) value);
+                    break;
+                case TableSchema.BOOLEAN:
+                    put_boolean(i, (Boolean) value);
+                    break;
+                case TableSchema.FLOAT:
+                    put_float(i, (Float) value);
+                    break;
+                case TableSchema.DOUBLE:
+                    put_double(i, (Double) value);
+                    break;
+                default:
+                    throw new RuntimeException("Unsupported type");
+            }
+        }
+        return finish();
+    }
+
+    // copy of the record of row, for callers that keep the bytes
+    public byte[] encode_to_array(Object[] row) {
+        int length = encode(row);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    // starts a new record
+    public void begin() {
+        Arrays.fill(buffer, schema.get_bitmap_offset(), schema.get_header_size(), (byte) 0);
+        end = schema.get_header_size();
+    }
+
+    // returns the length of the record
+    public int finish() {
+        return end;
+    }
+
+    // fixed columns are zeroed, var columns get an empty (offset, len) pair
+    public void put_null(int column) {
+        buffer[schema.get_bitmap_offset() + column / 8] |= (byte) (1 << (7 - column % 8));
+        int field = schema.get_field_offset(column);
+        if(schema.is_fixed(column)){
+            Arrays.fill(buffer, field, field + schema.get_fixed_size(column), (byte) 0);
+        } else {
+            put_pair(field, 0);
+        }
+    }
+
+    public void put_int(int column, int value) {
+        fields.putInt(schema.get_field_offset(column), value);
+    }
+
+    public void put_boolean(int column, boolean value) {
+        buffer[schema.get_field_offset(column)] = (byte) (value ? 1 : 0);
+    }
+
+    public void put_float(int column, float value) {
+        fields.putFloat(schema.get_field_offset(column), value);
+    }
+
+    public void put_double(int column, double value) {
+        fields.putDouble(schema.get_field_offset(column), value);
+    }
+
+    public void put_string(int column, String value) {
+        int length = value.length();
+        ensure(end + length);
+        for(int i = 0; i < length; i++){
+            char c = value.charAt(i);
+            if(c >= 0x80){
+                // same bytes as String.getBytes, which the decoder reverses
+                byte[] bytes = value.getBytes();
+                put_bytes(column, bytes, 0, bytes.length);
+                return;
+            }
+            buffer[end + i] = (byte) c;
+        }
+        put_pair(schema.get_field_offset(column), length);
+        end += length;
+    }
+
+    // raw bytes of a var column, as String.getBytes would give them
+    public void put_bytes(int column, byte[] src, int offset, int length) {
+        ensure(end + length);
+        System.arraycopy(src, offset, buffer, end, length);
+        put_pair(schema.get_field_offset(column), length);
+        end += length;
+    }
+
+    private void put_pair(int field, int length) {
+        fields.putShort(field, (short) end);
+        fields.putShort(field + 2, (short) length);
+    }
+
+    // records longer than a block are encoded too, File rejects them
+    private void ensure(int size) {
+        if(size > buffer.length){
+            allocate(Math.max(size, 2 * buffer.length));
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package manager;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/*
+    * A filter compiled from a calcite RexNode, evaluated on the encoded bytes of a record in a block.
+    * Fields are read at their schema offsets and nulls from the null bitmap, nothing is decoded or boxed.
+    *
+    * Supported - AND, OR, NOT, IS [NOT] NULL, =, <>, <, <=, >, >= between a column and a literal, SEARCH
+    * (expanded into those) and boolean literals. Evaluation is three valued like SQL, a comparison with a
+    * null field is unknown and a record passes only if the filter is true.
+ */
+public abstract class RecordPredicate {
+
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+    static final int UNKNOWN = 2;
+
+    // TRUE, FALSE or UNKNOWN for the record at record_offset of a little endian block view
+    abstract int evaluate(ByteBuffer block, int record_offset);
+
+    public boolean test(ByteBuffer block, int record_offset) {
+        return evaluate(block, record_offset) == TRUE;
+    }
+
+    // filter over rowType, the row type of the table as calcite sees it
+    // null if the filter uses anything not supported, it then has to be evaluated on decoded rows
+    public static RecordPredicate compile(RexNode filter, RelDataType rowType, TableSchema schema) {
+        if (filter instanceof RexLiteral) {
+            Boolean value = ((RexLiteral) filter).getValueAs(Boolean.class);
+            return new Constant(value == null ? UNKNOWN : value ? TRUE : FALSE);
+        }
+        if (!(filter instanceof RexCall)) {
+            return null;
+        }
+        RexCall call = (RexCall) filter;
+        List<RexNode> operands = call.getOperands();
+        switch (call.getKind()) {
+            case AND:
+            case OR: {
+                RecordPredicate[] children = new RecordPredicate[operands.size()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = compile(operands.get(i), rowType, schema);
+                    if (children[i] == null) {
+                        return null;
+                    }
+                }
+                return new Junction(call.getKind() == SqlKind.AND, children);
+            }
+            case NOT: {
+                RecordPredicate child = compile(operands.get(0), rowType, schema);
+                return child == null ? null : new Not(child);
+            }
+            case IS_NULL:
+            case IS_NOT_NULL: {
+                int column = column_of(operands.get(0), rowType, schema);
+                return column == -1 ? null : new IsNull(schema, column, call.getKind() == SqlKind.IS_NULL);
+            }
+            case SEARCH:
+                return compile(RexUtil.expandSearch(new RexBuilder(new JavaTypeFactoryImpl()), null, call), rowType, schema);
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return compile_comparison(call, rowType, schema);
+            default:
+                return null;
+        }
+    }
+
+    // column op literal, or literal op column
+    private static RecordPredicate compile_comparison(RexCall call, RelDataType rowType, TableSchema schema) {
+        SqlKind kind = call.getKind();
+        RexNode left = call.getOperands().get(0);
+        RexNode right = call.getOperands().get(1);
+        if (left instanceof RexLiteral && right instanceof RexInputRef) {
+            RexNode swap = left;
+            left = right;
+            right = swap;
+            kind = kind.reverse();
+        }
+        int column = column_of(left, rowType, schema);
+        if (column == -1 || !(right instanceof RexLiteral)) {
+            return null;
+        }
+        RexLiteral literal = (RexLiteral) right;
+        if (literal.isNull()) {
+            return new Constant(UNKNOWN);
+        }
+
+        switch (schema.get_type(column)) {
+            case TableSchema.INTEGER: {
+                BigDecimal value = literal.getValueAs(BigDecimal.class);
+                return value == null ? null : IntCompare.of(schema, column, kind, value);
+            }
+            case TableSchema.FLOAT:
+            case TableSchema.DOUBLE: {
+                Double value = literal.getValueAs(Double.class);
+                return value == null ? null : new DecimalCompare(schema, column, kind, value);
+            }
+            case TableSchema.BOOLEAN: {
+                Boolean value = literal.getValueAs(Boolean.class);
+                if (value == null || (kind != SqlKind.EQUALS && kind != SqlKind.NOT_EQUALS)) {
+                    return null;
+                }
+                return new BooleanCompare(schema, column, kind == SqlKind.EQUALS, value);
+            }
+            default: {
+                String value = literal.getValueAs(String.class);
+                if (value == null) {
+                    return null;
+                }
+                return new StringCompare(schema, column, kind, value.getBytes());
+            }
+        }
+    }
+
+    // schema column of a column reference, -1 for anything else
+    private static int column_of(RexNode node, RelDataType rowType, TableSchema schema) {
+        if (!(node instanceof RexInputRef)) {
+            return -1;
+        }
+        return schema.get_column_index(rowType.getFieldNames().get(((RexInputRef) node).getIndex()));
+    }
+
+    // result of a comparison of a field with a literal, by the sign of field - literal
+    private static int result(SqlKind kind, int sign) {
+        boolean result;
+        switch (kind) {
+            case EQUALS:
+                result = sign == 0;
+                break;
+            case NOT_EQUALS:
+                result = sign != 0;
+                break;
+            case LESS_THAN:
+                result = sign < 0;
+                break;
+            case LESS_THAN_OR_EQUAL:
+                result = sign <= 0;
+                break;
+            case GREATER_THAN:
+                result = sign > 0;
+                break;
+            default:
+                result = sign >= 0;
+        }
+        return result ? TRUE : FALSE;
+    }
+
+    private static class Constant extends RecordPredicate {
+        private final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        int evaluate(ByteBuffer block, int record_offset) {
+            return value;
+        }
+    }
+
+    private static class Junction extends RecordPredicate {
+        private final boolean and;
+        private final RecordPredicate[] children;
+
+        Junction(boolean and, RecordPredicate[] children) {
+            this.and = and;
+            this.children = children;
+        }
+
+        @Override
+        int evaluate(ByteBuffer block, int record_offset) {
+            // a false child decides AND, a true one decides OR
+            int decisive = and ? FALSE : TRUE;
+            int result = and ? TRUE : FALSE;
+            for (RecordPredicate child : children) {
+                int value = child.evaluate(block, record_offset);
+                if (value == decisive) {
+                    return decisive;
+                }
+                if (value == UNKNOWN) {
+                    result = UNKNOWN;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Not extends RecordPredicate {
+        private final RecordPredicate child;
+
+        Not(RecordPredicate child) {
+            this.child = child;
+        }
+
+        @Override
+        int evaluate(ByteBuffer block, int record_offset) {
+            int value = child.evaluate(block, record_offset);
+            return value == UNKNOWN ? UNKNOWN : TRUE - value;
+        }
+    }
+
+    private static class IsNull extends RecordPredicate {
+        private final TableSchema schema;
+        private final int column;
+        private final boolean is_null;
+
+        IsNull(TableSchema schema, int column, boolean is_null) {
+            this.schema = schema;
+            this.column = column;
+            this.is_null = is_null;
+        }
+
+        @Override
+        int evaluate(ByteBuffer block, int record_offset) {
+            return schema.is_null(block, record_offset, column) == is_null ? TRUE : FALSE;
+        }
+    }
+
+    // base of the comparisons of one column, unknown when the field is null
+    private abstract static class Compare extends RecordPredicate {
+        final TableSchema schema;
+        final int column;
+        final int field_offset;
+
+        Compare(TableSchema schema, int column) {
+            this.schema = schema;
+            this.column = column;
+            this.field_offset = schema.get_field_offset(column);
+        }
+
+        @Override
+        int evaluate(ByteBuffer block, int record_offset) {
+            if (schema.is_null(block, record_offset, column)) {
+                return UNKNOWN;
+            }
+            return compare(block, record_offset);
+        }
+
+        abstract int compare(ByteBuffer block, int record_offset);
+    }
+
+    // INTEGER column, the literal may have a fraction, e.g. x < 2.5 is x <= 2
+    private static class IntCompare extends Compare {
+        private final SqlKind kind;
+        private final long value;
+
+        private IntCompare(TableSchema schema, int column, SqlKind kind, long value) {
+            super(schema, column);
+            this.kind = kind;
+            this.value = value;
+        }
+
+        static RecordPredicate of(TableSchema schema, int column, SqlKind kind, BigDecimal literal) {
+            BigDecimal floor = literal.setScale(0, RoundingMode.FLOOR);
+            if (floor.compareTo(literal) != 0) {
+                // no int equals a literal with a fraction
+                switch (kind) {
+                    case EQUALS:
+                        return new NotNull(schema, column, FALSE);
+                    case NOT_EQUALS:
+                        return new NotNull(schema, column, TRUE);
+                    case LESS_THAN:
+                    case GREATER_THAN_OR_EQUAL:
+                        // x < 2.5 is x < 3, x >= 2.5 is x >= 3
+                        floor = floor.add(BigDecimal.ONE);
+                        break;
+                    case LESS_THAN_OR_EQUAL:
+                    case GREATER_THAN:
+                    default:
+                        // x <= 2.5 is x <= 2, x > 2.5 is x > 2
+                        break;
+                }
+            }
+            // literals beyond the int range compare like any value beyond it
+            long value = floor.max(BigDecimal.valueOf(Long.MIN_VALUE / 2)).min(BigDecimal.valueOf(Long.MAX_VALUE / 2)).longValue();
+            return new IntCompare(schema, column, kind, value);
+        }
+
+        @Override
+        int compare(ByteBuffer block, int record_offset) {
+            return result(kind, Long.compare(block.getInt(record_offset + field_offset), value));
+        }
+    }
+
+    // FLOAT and DOUBLE columns, compared as double
+    private static class DecimalCompare extends Compare {
+        private final SqlKind kind;
+        private final double value;
+        private final boolean is_float;
+
+        DecimalCompare(TableSchema schema, int column, SqlKind kind, double value) {
+            super(schema, column);
+            this.kind = kind;
+            this.value = value;
+            this.is_float = schema.get_type(column) == TableSchema.FLOAT;
+        }
+
+        @Override
+        int compare(ByteBuffer block, int record_offset) {
+            double field = is_float ? block.getFloat(record_offset + field_offset) : block.getDouble(record_offset + field_offset);
+            return result(kind, field < value ? -1 : field > value ? 1 : 0);
+        }
+    }
+
+    private static class BooleanCompare extends Compare {
+        private final boolean equals;
+        private final boolean value;
+
+        BooleanCompare(TableSchema schema, int column, boolean equals, boolean value) {
+            super(schema, column);
+            this.equals = equals;
+            this.value = value;
+        }
+
+        @Override
+        int compare(ByteBuffer block, int record_offset) {
+            boolean field = block.get(record_offset + field_offset) != 0;
+            return (field == value) == equals ? TRUE : FALSE;
+        }
+    }
+
+    // VARCHAR column, bytes compared unsigned, which orders ASCII strings like String.compareTo
+    private static class StringCompare extends Compare {
+        private final SqlKind kind;
+        private final byte[] value;
+
+        StringCompare(TableSchema schema, int column, SqlKind kind, byte[] value) {
+            super(schema, column);
+            this.kind = kind;
+            this.value = value;
+        }
+
+        @Override
+        int compare(ByteBuffer block, int record_offset) {
+            int start = record_offset + (block.getShort(record_offset + field_offset) & 0xFFFF);
+            int length = block.getShort(record_offset + field_offset + 2) & 0xFFFF;
+            int n = Math.min(length, value.length);
+            for (int i = 0; i < n; i++) {
+                int diff = (block.get(start + i) & 0xFF) - (value[i] & 0xFF);
+                if (diff != 0) {
+                    return result(kind, diff);
+                }
+            }
+            return result(kind, Integer.compare(length, value.length));
+        }
+    }
+
+    // same result for every field that is not null
+    private static class NotNull extends Compare {
+        private final int value;
+
+        NotNull(TableSchema schema, int column, int value) {
+            super(schema, column);
+            this.value = value;
+        }
+
+        @Override
+        int compare(ByteBuffer block, int record_offset) {
+            return value;
+        }
+    }
+}
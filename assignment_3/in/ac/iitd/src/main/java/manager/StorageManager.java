@@ -1,23 +1,42 @@
 package manager;
 import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
 import storage.DB;
+import storage.Snapshot;
+import storage.WriteAheadLog;
 import storage.File;
+import storage.RecordId;
 import storage.Block;
 import Utils.CsvRowConverter;
 
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.Sources;
 
 import org.json.simple.JSONArray;
@@ -29,23 +48,113 @@ import java.util.Iterator;
 
 public class StorageManager {
 
-    private HashMap<String, Integer> file_to_fileid;
+    private Map<String, Integer> file_to_fileid;
     private DB db;
 
+    // tables registered while lazy, loaded by materialize on first use
+    private boolean lazy;
+    private final Map<String, List<RelDataType>> deferred = new ConcurrentHashMap<>();
+
+    // compiled schemas of the tables, built on first use, see get_schema
+    private final HashMap<String, TableSchema> schemas = new HashMap<>();
+
+    // the last block copied by each open cursor of a table, by file id, see open_cursor and vacuum_block
+    private final Map<Integer, Set<AtomicInteger>> open_scans = new ConcurrentHashMap<>();
+
     enum ColumnType {
         VARCHAR, INTEGER, BOOLEAN, FLOAT, DOUBLE
     };
 
     public StorageManager() {
-        file_to_fileid = new HashMap<>();
-        db = new DB();
+        this(new DB());
+    }
+
+    // use a DB created with a BufferPool to keep tables and indexes on disk
+    public StorageManager(DB db) {
+        this(db, new HashMap<>());
+    }
+
+    private StorageManager(DB db, HashMap<String, Integer> file_to_fileid) {
+        // read while other tables are materialized
+        this.file_to_fileid = new ConcurrentHashMap<>(file_to_fileid);
+        this.db = db;
+    }
+
+    // reopens tables and indexes saved with checkpoint, without reading any CSV
+    public static StorageManager open_snapshot(Path path) {
+        Snapshot snapshot = Snapshot.open(path);
+        return new StorageManager(snapshot.get_db(), snapshot.get_catalog());
+    }
+
+    // reopens the DB from the snapshot at path (if there is one) plus every change committed to wal since,
+    // and keeps logging changes to wal
+    public static StorageManager recover(Path snapshot_path, WriteAheadLog wal) {
+        StorageManager storage_manager;
+        if(snapshot_path != null && Files.exists(snapshot_path)) {
+            storage_manager = open_snapshot(snapshot_path);
+        } else {
+            storage_manager = new StorageManager();
+        }
+        storage_manager.file_to_fileid.putAll(wal.replay(storage_manager.db));
+        storage_manager.db.attach_log(wal);
+        return storage_manager;
+    }
+
+    // saves all tables and indexes to a single snapshot file at path
+    // the log is cut afterwards, up to where it was when the pages were copied, as the snapshot holds
+    // everything before that. Commits logged while the snapshot was written are kept
+    public void checkpoint(Path path) {
+        WriteAheadLog wal = db.get_log();
+        long lsn = 0;
+        // writers wait until every page is copied, a vacuum_block half done would leave a row in two blocks
+        // or an index entry at the old RID in the image. Locks are taken in file id order
+        List<ReentrantReadWriteLock.ReadLock> locks = new ArrayList<>();
+        try {
+            for (int file_id : new TreeSet<>(file_to_fileid.values())) {
+                ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+                lock.lock();
+                locks.add(lock);
+            }
+            db.flush();
+            // a record is logged after its change is made to the block, so the pages copied next hold
+            // everything logged before lsn
+            if(wal != null) {
+                lsn = wal.get_lsn();
+            }
+            Snapshot.write(db, file_to_fileid, path);
+        } finally {
+            for (ReentrantReadWriteLock.ReadLock lock : locks) {
+                lock.unlock();
+            }
+        }
+        if(wal != null) {
+            wal.truncate(lsn);
+        }
+    }
+
+    private void register(String file_name, int file_id) {
+        file_to_fileid.put(file_name, file_id);
+        if(db.get_log() != null) {
+            db.get_log().log_catalog(file_name, file_id);
+        }
+    }
+
+    // ends the current operation, its changes survive a crash once the log says so
+    private void commit() {
+        if(db.get_log() != null) {
+            db.get_log().commit();
+        }
+    }
+
+    // while lazy, loadFile only registers a table, it is loaded the first time it is used
+    // a table already registered stays deferred when lazy is turned off
+    public void set_lazy(boolean lazy) {
+        this.lazy = lazy;
     }
 
     // loads CSV files into DB362
     public void loadFile(String csvFile, List<RelDataType> typeList) {
 
-        System.out.println("Loading file: " + csvFile);
-
         String table_name = csvFile;
 
         if(csvFile.endsWith(".csv")) {
@@ -53,19 +162,44 @@ public class StorageManager {
         }
 
         // check if file already exists
-        assert(file_to_fileid.get(table_name) == null);
+        assert(!check_file_exists(table_name));
+
+        if(lazy) {
+            deferred.put(table_name, typeList);
+            return;
+        }
+        load_table(table_name, csvFile, typeList);
+    }
+
+    // loads table_name if it is still deferred, see set_lazy
+    // loads are serialized, a thread that comes second waits for the first one and finds the table loaded
+    private void materialize(String table_name) {
+        if (table_name == null || !deferred.containsKey(table_name)) {
+            return;
+        }
+        synchronized (deferred) {
+            List<RelDataType> typeList = deferred.get(table_name);
+            if (typeList != null) {
+                load_table(table_name, table_name + ".csv", typeList);
+                deferred.remove(table_name);
+            }
+        }
+    }
+
+    private void load_table(String table_name, String csvFile, List<RelDataType> typeList) {
+
+        System.out.println("Loading file: " + csvFile);
 
+        // register the file first so that its blocks are paged out as they are filled
         File f = new File();
+        int counter = db.addFile(f);
         try{
             csvFile = getFsPath() + "/" + csvFile;
-            BufferedReader br = new BufferedReader(new FileReader(csvFile));
-            String line = "";
-            int lineNum = 0;
-
-            while ((line = br.readLine()) != null) {
-
+            CsvLoader loader = new CsvLoader(csvFile, typeList);
+            try {
                 // csv header line
-                if(lineNum == 0){
+                String line = loader.read_header();
+                if(line != null){
 
                     String[] columnNames = CsvRowConverter.parseLine(line);
                     List<String> columnNamesList = new ArrayList<>();
@@ -81,25 +215,12 @@ public class StorageManager {
 
                     Block schemaBlock = createSchemaBlock(columnNamesList, typeList);
                     f.add_block(schemaBlock);
-                    lineNum++;
-                    continue;
-                }
-
-                String[] parsedLine = CsvRowConverter.parseLine(line);
-                Object[] row = new Object[parsedLine.length];
 
-                for(int i = 0; i < parsedLine.length; i++) {
-                    row[i] = CsvRowConverter.convert(typeList.get(i), parsedLine[i]);
+                    // rows are parsed and encoded in parallel, see CsvLoader
+                    loader.load(f, TableSchema.from_block(schemaBlock.get_view()));
                 }
-
-                // convert row to byte array
-                byte[] record = convertToByteArray(row, typeList);
-
-                boolean added = f.add_record_to_last_block(record);
-                if(!added) {
-                    f.add_record_to_new_block(record);
-                }
-                lineNum++;
+            } finally {
+                loader.close();
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -108,175 +229,11 @@ public class StorageManager {
         }
 
         System.out.println("Done writing file\n");
-        int counter = db.addFile(f);
-        file_to_fileid.put(table_name, counter);
+        register(table_name, counter);
+        commit();
         return;
     }
 
-    // converts a row to byte array to write to relational file
-    private byte[] convertToByteArray(Object[] row, List<RelDataType> typeList) {
-
-        List<Byte> fixed_length_Bytes = new ArrayList<>();
-        List<Byte> variable_length_Bytes = new ArrayList<>();
-        List<Integer> variable_length = new ArrayList<>();
-        List<Boolean> fixed_length_nullBitmap = new ArrayList<>();
-        List<Boolean> variable_length_nullBitmap = new ArrayList<>();
-
-        for(int i = 0; i < row.length; i++) {
-
-            if(typeList.get(i).getSqlTypeName().getName().equals("INTEGER")) {
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    int val = (int) row[i];
-                    byte[] intBytes = new byte[4];
-                    intBytes[0] = (byte) (val & 0xFF);
-                    intBytes[1] = (byte) ((val >> 8) & 0xFF);
-                    intBytes[2] = (byte) ((val >> 16) & 0xFF);
-                    intBytes[3] = (byte) ((val >> 24) & 0xFF);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add(intBytes[j]);
-                    }
-                }
-            } else if(typeList.get(i).getSqlTypeName().getName().equals("VARCHAR")) {
-                if(row[i] == null){
-                    variable_length_nullBitmap.add(true);
-                    for(int j = 0; j < 1; j++) {
-                        variable_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    variable_length_nullBitmap.add(false);
-                    String val = (String) row[i];
-                    byte[] strBytes = val.getBytes();
-                    for(int j = 0; j < strBytes.length; j++) {
-                        variable_length_Bytes.add(strBytes[j]);
-                    }
-                    variable_length.add(strBytes.length);
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("BOOLEAN")) {         
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    fixed_length_Bytes.add((byte) 0);
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    boolean val = (boolean) row[i];
-                    fixed_length_Bytes.add((byte) (val ? 1 : 0));
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("FLOAT")) {
-                
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    float val = (float) row[i];
-                    byte[] floatBytes = new byte[4];
-                    int intBits = Float.floatToIntBits(val);
-                    floatBytes[0] = (byte) (intBits & 0xFF);
-                    floatBytes[1] = (byte) ((intBits >> 8) & 0xFF);
-                    floatBytes[2] = (byte) ((intBits >> 16) & 0xFF);
-                    floatBytes[3] = (byte) ((intBits >> 24) & 0xFF);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add(floatBytes[j]);
-                    }
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("DOUBLE")) {
-                
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 8; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    double val = (double) row[i];
-                    byte[] doubleBytes = new byte[8];
-                    long longBits = Double.doubleToLongBits(val);
-                    doubleBytes[0] = (byte) (longBits & 0xFF);
-                    doubleBytes[1] = (byte) ((longBits >> 8) & 0xFF);
-                    doubleBytes[2] = (byte) ((longBits >> 16) & 0xFF);
-                    doubleBytes[3] = (byte) ((longBits >> 24) & 0xFF);
-                    doubleBytes[4] = (byte) ((longBits >> 32) & 0xFF);
-                    doubleBytes[5] = (byte) ((longBits >> 40) & 0xFF);
-                    doubleBytes[6] = (byte) ((longBits >> 48) & 0xFF);
-                    doubleBytes[7] = (byte) ((longBits >> 56) & 0xFF);
-                    for(int j = 0; j < 8; j++) {
-                        fixed_length_Bytes.add(doubleBytes[j]);
-                    }
-                }
-            } else {
-                System.out.println("Unsupported type");
-                throw new RuntimeException("Unsupported type");
-            }
-        }
-
-        short num_bytes_for_bitmap = (short) ((fixed_length_nullBitmap.size() + variable_length_nullBitmap.size() + 7) / 8); // should be in multiples of bytes
-
-        //                       bytes for fixed length and variable length fields          offset & length of var fields
-        byte[] result = new byte[fixed_length_Bytes.size() + variable_length_Bytes.size() + 4 * variable_length.size() + num_bytes_for_bitmap];
-        int variable_length_offset = 4 * variable_length.size() + fixed_length_Bytes.size() + num_bytes_for_bitmap;
-
-        int idx = 0;
-        for(; idx < variable_length.size() ; idx ++){
-            // first 2 bytes should be offset
-            result[idx * 4] = (byte) (variable_length_offset & 0xFF);
-            result[idx * 4 + 1] = (byte) ((variable_length_offset >> 8) & 0xFF);
-
-            // next 2 bytes should be length
-            result[idx * 4 + 2] = (byte) (variable_length.get(idx) & 0xFF);
-            result[idx * 4 + 3] = (byte) ((variable_length.get(idx) >> 8) & 0xFF);
-
-            variable_length_offset += variable_length.get(idx);
-        }
-
-        idx = idx * 4;
-
-        // write fixed length fields
-        for(int i = 0; i < fixed_length_Bytes.size(); i++, idx++) {
-            result[idx] = fixed_length_Bytes.get(i);
-        }
-
-        // write null bitmap
-        int bitmap_idx = 0;
-        for(int i = 0; i < fixed_length_nullBitmap.size(); i++) {
-            if(fixed_length_nullBitmap.get(i)) {
-                result[idx] |= (1 << (7 - bitmap_idx));
-            }
-            bitmap_idx++;
-            if(bitmap_idx == 8) {
-                bitmap_idx = 0;
-                idx++;
-            }
-        }
-        for(int i = 0; i < variable_length_nullBitmap.size(); i++) {
-            if(variable_length_nullBitmap.get(i)) {
-                result[idx] |= (1 << (7 - bitmap_idx));
-            }
-            bitmap_idx++;
-            if(bitmap_idx == 8) {
-                bitmap_idx = 0;
-                idx++;
-            }
-        }
-
-        if(bitmap_idx != 0) {
-            idx++;
-        }
-
-        // write variable length fields
-        for(int i = 0; i < variable_length_Bytes.size(); i++, idx++) {
-            result[idx] = variable_length_Bytes.get(i);
-        }
-
-        return result;
-    }
-
     // helper function for loadFile
     private String getFsPath() throws IOException, ParseException {
 
@@ -372,12 +329,21 @@ public class StorageManager {
 
     // should only read one block at a time
     public byte[] get_data_block(String table_name, int block_id){
+        materialize(table_name);
         int file_id = file_to_fileid.get(table_name);
         return db.get_data(file_id, block_id);
     }
 
+    // moves a loaded table onto a private memory mapping of a page file at path
+    // its blocks are then read in place, without heap copies, see DB.map_file
+    public void map_table(String table_name, Path path) {
+        materialize(table_name);
+        db.map_file(file_to_fileid.get(table_name), path);
+    }
+
+    // true for deferred tables too, they are loaded on first use
     public boolean check_file_exists(String table_name) {
-        return file_to_fileid.get(table_name) != null;
+        return file_to_fileid.get(table_name) != null || deferred.containsKey(table_name);
     }
 
     public boolean check_index_exists(String table_name, String column_name) {
@@ -388,6 +354,20 @@ public class StorageManager {
     // the order of returned columns should be same as the order in schema
     // i.e., first all fixed length columns, then all variable length columns
     public List<Object[]> get_records_from_block(String table_name, int block_id){
+        return get_records_from_block(table_name, block_id, null);
+    }
+
+    // like get_records_from_block, but each record only holds the given schema columns, in that order
+    // other fields are not decoded at all, e.g. no String is made for a var column that is not asked for
+    // columns == null gives every column, see get_columns and project_columns
+    public List<Object[]> get_records_from_block(String table_name, int block_id, int[] columns){
+        return get_records_from_block(table_name, block_id, columns, null);
+    }
+
+    // like get_records_from_block with columns, but only records that pass filter are decoded
+    // the filter is tested on the encoded record, see compile_filter, filter == null passes every record
+    public List<Object[]> get_records_from_block(String table_name, int block_id, int[] columns, RecordPredicate filter){
+        materialize(table_name);
         /* Write your code here */
         // return null if file does not exist, or block_id is invalid
         // return list of records otherwise
@@ -396,259 +376,405 @@ public class StorageManager {
             return null;
         }
         
-        if(get_data_block(table_name, block_id)==null){
-            return null;
-        }
-
         int file_id = file_to_fileid.get(table_name);
-        byte[] column =db.get_data(file_id,0);
-        int numCol = (column[1] << 8) | (column[0] & 0xFF);
-
-        int total_var_length=0;
-        int total_fix_length=0;
-        List<Integer> fix = new ArrayList<>();
-        int[] coltype= new int[numCol];
-        for(int i=0;i<numCol;i++){
-            int offset = (column[2*i+3] << 8) | (column[2*i+2] & 0xFF);
-            int type= column[offset] & 0xFF ;
-            int name_length= column[offset+1] & 0xFF;
-            byte[] colname_byte=db.get_data(file_id,0,offset+2,name_length);
-            String colname = new String(colname_byte); 
-            if(type==0){
-                total_var_length+=1;
-            }
-            if(type==1 || type==3){
-                total_fix_length=4;
-                fix.add(total_fix_length);
-            }
-            if(type==2){
-                total_fix_length=1;
-                fix.add(total_fix_length);
-            }
-            if(type==4){
-                total_fix_length=8;
-                fix.add(total_fix_length);
-            }
-            
-            coltype[i]=type;
-        }
-
-        byte[]data = get_data_block(table_name, block_id);
-        int numRecords = (data[0] << 8) | (data[1] & 0xFF);
-        List<Object[]> list = new ArrayList<>();
-        for(int i=0;i<numRecords;i++){
-            int recordoffset= (data[2*i+2] << 8) | (data[2*i+3] & 0xFF);
-            Object[] obj = new Object[numCol];
-            int temp=recordoffset+4*(total_var_length);
-            for(int j=0;j<fix.size();j++){
-                if(coltype[j]==1){
-                    byte[] bytes=db.get_data(file_id,block_id,temp,4);
-                    int value =convertBytesToT1(bytes,Integer.class);
-                    obj[j]=value;
-                }
-                if(coltype[j]==2){
-                    byte[] bytes=db.get_data(file_id,block_id,temp,1);
-                    Boolean value =convertBytesToT1(bytes,Boolean.class);
-                    obj[j]=value;
-                }
-                if(coltype[j]==3){
-                    byte[] bytes=db.get_data(file_id,block_id,temp,4);
-                    Float value =convertBytesToT1(bytes,Float.class);
-                    obj[j]=value;
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+        lock.lock();
+        try {
+            if(db.get_view(file_id, block_id)==null){
+                return null;
+            }
+
+            TableSchema schema = get_schema(table_name);
+
+            // decode straight from a view of the block, fields are not copied out one by one
+            ByteBuffer data = db.get_view(file_id, block_id);
+            byte[] scratch = new byte[data.capacity()];
+
+            int numRecords = (data.get(0) << 8) | (data.get(1) & 0xFF);
+            List<Object[]> list = new ArrayList<>();
+            for(int i=0;i<numRecords;i++){
+                // deleted record, see File.DEAD_SLOT
+                if((data.get(2*i+2) & 0x80) != 0){
+                    continue;
                 }
-                if(coltype[j]==4){
-                    byte[] bytes=db.get_data(file_id,block_id,temp,8);
-                    Double value =convertBytesToT1(bytes,Double.class);
-                    obj[j]=value;
+                int recordoffset= (data.get(2*i+2) << 8) | (data.get(2*i+3) & 0xFF);
+                if(filter != null && !filter.test(data, recordoffset)){
+                    continue;
                 }
-                
-                temp+=fix.get(j);
-            }
-            for(int j=0;j<total_var_length;j++){
-                int temp1=recordoffset+4*j;
-                int rcoffset= (data[temp1+1] << 8) | (data[temp1] & 0xFF);
-                int rclength= (data[temp1+3] << 8) | (data[temp1+2] & 0xFF);
-                byte[] rowbyte=db.get_data(file_id,block_id,recordoffset+rcoffset,rclength);
-                String value = new String(rowbyte);
-                obj[fix.size()+j]=value;
+                list.add(columns == null ? schema.decode(data, recordoffset, scratch) : schema.decode(data, recordoffset, columns, scratch));
+
             }
-            list.add(obj);
 
+            return list;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return list;
+    // streams the records of table_name that pass filter, each holding the given schema columns in that
+    // order, see TableCursor. columns == null gives every column, filter == null passes every record
+    // blocks are prefetched when the tables are kept on disk. null if the table does not exist
+    // The cursor must be closed, with try-with-resources or by reading it to the end. Until then vacuum_block
+    // moves no rows past the block it has reached, a cursor dropped unclosed is closed once it is collected
+    public TableCursor open_cursor(String table_name, int[] columns, RecordPredicate filter) {
+        TableSchema schema = get_schema(table_name);
+        if (schema == null) {
+            return null;
+        }
+        int file_id = file_to_fileid.get(table_name);
+        int block_size = db.get_view(file_id, 0).capacity();
+        // registered before the first block is copied, copy_block then moves it on under the read lock
+        AtomicInteger position = new AtomicInteger();
+        open_scans.computeIfAbsent(file_id, id -> ConcurrentHashMap.newKeySet()).add(position);
+        return new TableCursor(this, file_id, position, schema, columns, filter, db.get_buffer_pool() != null, block_size);
     }
 
-    public boolean create_index(String table_name, String column_name, int order) {
-        /* Write your code here */
-        // BPlusTreeIndexFile<T> file= new BPlusTreeIndexFile<>(order,"STRING");
-        String index_file_name = table_name + "_" + column_name + "_index";
-        if (check_index_exists(table_name, column_name)) {
-            return false;
+    // called once for every cursor from open_cursor when it is closed
+    void scan_closed(int file_id, AtomicInteger position) {
+        open_scans.get(file_id).remove(position);
+    }
+
+    // copies block block_id of file file_id into buffer for the cursor at position, false if there is no
+    // such block
+    boolean copy_block(int file_id, AtomicInteger position, int block_id, byte[] buffer) {
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+        lock.lock();
+        try {
+            ByteBuffer data = db.get_view(file_id, block_id);
+            if (data == null) {
+                return false;
+            }
+            data.clear();
+            data.get(buffer, 0, data.capacity());
+            position.set(block_id);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // an empty batch for the given schema columns of table_name, columns == null for every column
+    // null if the table does not exist
+    public VectorBatch new_batch(String table_name, int[] columns) {
+        TableSchema schema = get_schema(table_name);
+        if (schema == null) {
+            return null;
         }
+        if (columns == null) {
+            columns = new int[schema.get_num_columns()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = i;
+            }
+        }
+        return new VectorBatch(schema, columns);
+    }
+
+    // fills batch, made by new_batch for table_name, with the live records of block_id
+    // rows that pass filter are selected, filter == null selects every row
+    // returns false if the table does not exist or block_id is invalid, the batch is then left as it was
+    public boolean read_batch(String table_name, int block_id, VectorBatch batch, RecordPredicate filter) {
+        materialize(table_name);
         if (!check_file_exists(table_name)) {
             return false;
         }
+        int file_id = file_to_fileid.get(table_name);
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+        lock.lock();
+        try {
+            ByteBuffer data = block_id < 1 ? null : db.get_view(file_id, block_id);
+            if (data == null) {
+                return false;
+            }
+            batch.fill(data, block_id, filter);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    // fetches the single record rid names, without decoding the rest of its block
+    // returns null if the table does not exist or there is no such record
+    public Object[] get_record(String table_name, long rid) {
+        return get_record(table_name, rid, null);
+    }
 
+    // the record only if it passes filter, see compile_filter, filter == null passes every record
+    public Object[] get_record(String table_name, long rid, RecordPredicate filter) {
+        materialize(table_name);
+        if (!check_file_exists(table_name)) {
+            return null;
+        }
         int file_id = file_to_fileid.get(table_name);
-        byte[] column =db.get_data(file_id,0);
-
-        int numCol = (column[1] << 8) | (column[0] & 0xFF);
+        int block_id = RecordId.block_id(rid);
+        int slot = RecordId.slot(rid);
 
+        TableSchema schema = get_schema(table_name);
 
-        int fix_length=-1;
-        int var_length=-1;
-        int total_var_length=0;
-        int total_fix_length=0;
-        int coltype=-1;
-        for(int i=0;i<numCol;i++){
-            int offset = (column[2*i+3] << 8) | (column[2*i+2] & 0xFF);
-            int type= column[offset] & 0xFF ;
-            int name_length= column[offset+1] & 0xFF;
-            byte[] colname_byte=db.get_data(file_id,0,offset+2,name_length);
-            String colname = new String(colname_byte); 
-            if(type==0){
-                total_var_length+=1;
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+        lock.lock();
+        try {
+            if (rid < 0 || block_id < 1) {
+                return null;
             }
-        
-            if (colname.equals(column_name)){
-                if(type==0){
-                    var_length=total_var_length;
-                }
-                else{
-                    fix_length=total_fix_length;
-                }
-                coltype= type;
+            ByteBuffer data = db.get_view(file_id, block_id);
+            if (data == null) {
+                return null;
             }
-
-            if(type==1 || type==3){
-                total_fix_length+=4;
+            int numRecords = (data.get(0) << 8) | (data.get(1) & 0xFF);
+            // deleted record, see File.DEAD_SLOT
+            if (slot >= numRecords || (data.get(2*slot+2) & 0x80) != 0) {
+                return null;
             }
-            if(type==2){
-                total_fix_length+=1;
+            int recordoffset = (data.get(2*slot+2) << 8) | (data.get(2*slot+3) & 0xFF);
+            if (filter != null && !filter.test(data, recordoffset)) {
+                return null;
             }
-            if(type==4){
-                total_fix_length+=8;
+            return schema.decode(data, recordoffset, new byte[data.capacity()]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // compiled schema of table_name, null if there is no such table
+    public TableSchema get_schema(String table_name) {
+        materialize(table_name);
+        synchronized (schemas) {
+            TableSchema schema = schemas.get(table_name);
+            if (schema == null && check_file_exists(table_name)) {
+                schema = TableSchema.from_block(db.get_view(file_to_fileid.get(table_name), 0));
+                schemas.put(table_name, schema);
             }
+            return schema;
+        }
+    }
 
+    // schema columns of the named columns, in that order, null if the table or a column does not exist
+    public int[] get_columns(String table_name, List<String> column_names) {
+        TableSchema schema = get_schema(table_name);
+        if (schema == null) {
+            return null;
+        }
+        int[] columns = new int[column_names.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = schema.get_column_index(column_names.get(i));
+            if (columns[i] == -1) {
+                return null;
+            }
         }
+        return columns;
+    }
 
+    // schema columns of a projection list over rowType, the row type of the table as calcite sees it
+    // null unless every expression is a plain column reference
+    public int[] project_columns(String table_name, RelDataType rowType, List<RexNode> projects) {
+        List<String> column_names = new ArrayList<>();
+        for (RexNode project : projects) {
+            if (!(project instanceof RexInputRef)) {
+                return null;
+            }
+            column_names.add(rowType.getFieldNames().get(((RexInputRef) project).getIndex()));
+        }
+        return get_columns(table_name, column_names);
+    }
 
+    // filter over rowType, the row type of the table as calcite sees it, compiled to run on encoded records
+    // null if the table does not exist or the filter is not supported by RecordPredicate
+    public RecordPredicate compile_filter(String table_name, RelDataType rowType, RexNode filter) {
+        TableSchema schema = get_schema(table_name);
+        if (schema == null) {
+            return null;
+        }
+        return RecordPredicate.compile(filter, rowType, schema);
+    }
 
-        if(coltype==0){
-            BPlusTreeIndexFile<String> indexFile= new BPlusTreeIndexFile<String>(order, String.class);
-    
-            int block_id=1;
-            while(get_data_block(table_name,block_id)!=null){
-                byte[]data = get_data_block(table_name, block_id);
-                int numRecords = (data[0] << 8) | (data[1] & 0xFF);
-                for(int i=0;i<numRecords;i++){
-                    int recordoffset= (data[2*i+2] << 8) | (data[2*i+3] & 0xFF);
-                    int temp=recordoffset+4*(var_length-1);
-                    int rcoffset= (data[temp+1] << 8) | (data[temp] & 0xFF);
-                    int rclength= (data[temp+3] << 8) | (data[temp+2] & 0xFF);
-                    byte[] rowbyte=db.get_data(file_id,block_id,recordoffset+rcoffset,rclength);
-                    String value = new String(rowbyte);
-                    indexFile.insert(value,block_id);
-                }
-                
-                block_id+=1;
-            }
-            int index_file_id = db.addFile(indexFile);
-            file_to_fileid.put(index_file_name, index_file_id);
-        }
-        if(coltype==1){
-            BPlusTreeIndexFile<Integer> indexFile= new BPlusTreeIndexFile<Integer>(order, Integer.class);
-            int block_id=1;
-            while(get_data_block(table_name,block_id)!=null){
-                byte[]data = get_data_block(table_name, block_id);
-                int numRecords = (data[0] << 8) | (data[1] & 0xFF);
-                for(int i=0;i<numRecords;i++){
-                    int recordoffset= (data[2*i+2] << 8) | (data[2*i+3] & 0xFF);
-                    int temp=recordoffset+4*(total_var_length)+fix_length;
-                    byte[] bytes=db.get_data(file_id,block_id,temp,4);
-                    int value =convertBytesToT1(bytes,Integer.class);
-                    indexFile.insert(value,block_id);
-                }
-                
-                block_id+=1;
-            }
-            int index_file_id = db.addFile(indexFile);
-            file_to_fileid.put(index_file_name, index_file_id);
-        }
-
-        if(coltype==2){
-            BPlusTreeIndexFile<Boolean> indexFile= new BPlusTreeIndexFile<Boolean>(order, Boolean.class);
-            int block_id=1;
-            while(get_data_block(table_name,block_id)!=null){
-                byte[]data = get_data_block(table_name, block_id);
-                int numRecords = (data[0] << 8) | (data[1] & 0xFF);
-                for(int i=0;i<numRecords;i++){
-                    int recordoffset= (data[2*i+2] << 8) | (data[2*i+3] & 0xFF);
-                    int temp=recordoffset+4*(total_var_length)+fix_length;  
-                    byte[] bytes=db.get_data(file_id,block_id,temp,1);
-                    boolean value=convertBytesToT1(bytes,Boolean.class);
-                    indexFile.insert(value,block_id);
-                }
-                
-                block_id+=1;
+    // value of a literal as the java type stored for column
+    // null if no value of the column equals it, i.e. a number with a fraction or beyond the range of an INT column
+    private Object literal_value(RexLiteral value, TableSchema schema, int column) {
+        if (schema.get_java_class(column) == Integer.class && value.getValue() instanceof BigDecimal) {
+            BigDecimal number = value.getValueAs(BigDecimal.class);
+            if (number.setScale(0, RoundingMode.FLOOR).compareTo(number) != 0
+                    || number.compareTo(INT_MIN) < 0 || number.compareTo(INT_MAX) > 0) {
+                return null;
             }
-            int index_file_id = db.addFile(indexFile);
-            file_to_fileid.put(index_file_name, index_file_id);
+            return number.intValue();
         }
+        return value.getValueAs(schema.get_java_class(column));
+    }
 
-        if(coltype==3){
-            BPlusTreeIndexFile<Float> indexFile= new BPlusTreeIndexFile<Float>(order, Float.class);
-            int block_id=1;
-            while(get_data_block(table_name,block_id)!=null){
-                byte[]data = get_data_block(table_name, block_id);
-                int numRecords = (data[0] << 8) | (data[1] & 0xFF);
-                for(int i=0;i<numRecords;i++){
-                    int recordoffset= (data[2*i+2] << 8) | (data[2*i+3] & 0xFF);
-                    int temp=recordoffset+4*(total_var_length)+fix_length;  
-                
-                    byte[] bytes=db.get_data(file_id,block_id,temp,4);
-                    float value =convertBytesToT1(bytes,Float.class);
-                    indexFile.insert(value,block_id);
+    // a bound on an INT column rounded to the ints it admits, up for a lower bound and down for an upper one,
+    // like RecordPredicate does. null if the literal is not a number
+    private static BigDecimal int_bound(RexLiteral bound, RoundingMode mode) {
+        if (!(bound.getValue() instanceof BigDecimal)) {
+            return null;
+        }
+        return bound.getValueAs(BigDecimal.class).setScale(0, mode);
+    }
+
+    private static final BigDecimal INT_MIN = BigDecimal.valueOf(Integer.MIN_VALUE);
+    private static final BigDecimal INT_MAX = BigDecimal.valueOf(Integer.MAX_VALUE);
+
+    private String index_name(String table_name, String column_name) {
+        return table_name + "_" + column_name + "_index";
+    }
+
+    // inserts a row into table_name, reusing free space in any of its blocks, and adds it to the indexes of the table
+    // the row is in schema order, like the rows returned by get_records_from_block
+    // returns the RID of the row, -1 if the table does not exist or the row does not fit into a block
+    public long insert_row(String table_name, Object[] row) {
+        materialize(table_name);
+        if (!check_file_exists(table_name)) {
+            return -1;
+        }
+        int file_id = file_to_fileid.get(table_name);
+
+        TableSchema schema = get_schema(table_name);
+        String[] colnames = schema.get_names();
+        if (row.length != colnames.length) {
+            return -1;
+        }
+        byte[] record = new RecordEncoder(schema).encode_to_array(row);
+
+        ReentrantReadWriteLock.WriteLock lock = db.get_lock(file_id).writeLock();
+        lock.lock();
+        try {
+            long rid = db.insert_record(file_id, record);
+            if (rid == -1) {
+                return -1;
+            }
+
+            for (int i = 0; i < colnames.length; i++) {
+                if (row[i] != null && check_index_exists(table_name, colnames[i])) {
+                    db.insert_index(file_to_fileid.get(index_name(table_name, colnames[i])), row[i], rid);
                 }
-                
-                block_id+=1;
             }
-            int index_file_id = db.addFile(indexFile);
-            file_to_fileid.put(index_file_name, index_file_id);
+            commit();
+            return rid;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        
+    public boolean create_index(String table_name, String column_name, int order) {
+        materialize(table_name);
+        /* Write your code here */
+        // BPlusTreeIndexFile<T> file= new BPlusTreeIndexFile<>(order,"STRING");
+        String index_file_name = table_name + "_" + column_name + "_index";
+        if (check_index_exists(table_name, column_name)) {
+            return false;
+        }
+        if (!check_file_exists(table_name)) {
+            return false;
+        }
 
-        if(coltype==4){
-            BPlusTreeIndexFile<Double> indexFile= new BPlusTreeIndexFile<Double>(order, Double.class);
-            int block_id=1;
-            while(get_data_block(table_name,block_id)!=null){
-                byte[]data = get_data_block(table_name, block_id);
-                int numRecords = (data[0] << 8) | (data[1] & 0xFF);
-                for(int i=0;i<numRecords;i++){
-                    int recordoffset= (data[2*i+2] << 8) | (data[2*i+3] & 0xFF);
-                    int temp=recordoffset+4*(total_var_length)+fix_length;  
-            
-                    byte[] bytes=db.get_data(file_id,block_id,temp,8);
-                    double value =convertBytesToT1(bytes,Double.class);
-                    indexFile.insert(value,block_id);
-                }
-                
-                block_id+=1;
+
+        int file_id = file_to_fileid.get(table_name);
+        TableSchema schema = get_schema(table_name);
+        int column = schema.get_column_index(column_name);
+        if (column == -1) {
+            return false;
+        }
+
+        BPlusTreeIndexFile<?> indexFile = new BPlusTreeIndexFile<>(order, schema.get_java_class(column));
+        int index_file_id = db.addFile(indexFile);
+        // writers wait until the index is registered, from then on insert_row, delete and vacuum_block keep it up to date
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+        lock.lock();
+        try {
+            build_index(indexFile, file_id, schema, column);
+            register(index_file_name, index_file_id);
+        } finally {
+            lock.unlock();
+        }
+
+        commit();
+        return true;
+    }
+
+    // like create_index, but the tree is bulk loaded bottom up from the sorted keys of the table instead of
+    // inserting them one at a time, see BPlusTreeIndexFile.bulkLoad. Leaves and internal nodes are filled to
+    // fill_factor of their capacity, 1 packs them completely. The tree holds the same entries but has a
+    // different shape than create_index gives, order must be at least 3
+    public boolean create_index(String table_name, String column_name, int order, double fill_factor) {
+        return create_indexes(table_name, Collections.singletonList(column_name), order, fill_factor);
+    }
+
+    // bulk loads an index on each of column_names, like create_index with a fill factor, from one scan of
+    // the table. Keys are read in parallel over ranges of blocks, see IndexKeys, then each tree is sorted
+    // and built on a thread of its own. Returns false without creating any index if the table or a column
+    // does not exist, or a column already has an index
+    public boolean create_indexes(String table_name, List<String> column_names, int order, double fill_factor) {
+        materialize(table_name);
+        int[] columns = get_columns(table_name, column_names);
+        if (columns == null || new HashSet<>(column_names).size() != column_names.size()) {
+            return false;
+        }
+        for (String column_name : column_names) {
+            if (check_index_exists(table_name, column_name)) {
+                return false;
             }
-            int index_file_id = db.addFile(indexFile);
-            file_to_fileid.put(index_file_name, index_file_id);
         }
+        int file_id = file_to_fileid.get(table_name);
+        TableSchema schema = get_schema(table_name);
+
+        // writers wait until the indexes are registered, rows changed after the scan would be missing from
+        // them or found at old RIDs. From then on insert_row, delete and vacuum_block keep them up to date
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(file_id).readLock();
+        lock.lock();
+        try {
+            IndexKeys keys = IndexKeys.extract(db, file_id, schema, columns);
+
+            List<BPlusTreeIndexFile<?>> indexFiles = new ArrayList<>();
+            List<ForkJoinTask<?>> builds = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) {
+                BPlusTreeIndexFile<?> indexFile = new BPlusTreeIndexFile<>(order, schema.get_java_class(columns[i]));
+                indexFiles.add(indexFile);
+                List<Object> column_keys = keys.get_keys(i);
+                long[] rids = keys.get_rids(i);
+                builds.add(ForkJoinTask.adapt(() -> bulk_load(indexFile, column_keys, rids, fill_factor)));
+            }
+            ForkJoinTask.invokeAll(builds);
 
+            for (int i = 0; i < columns.length; i++) {
+                register(index_name(table_name, column_names.get(i)), db.addFile(indexFiles.get(i)));
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit();
         return true;
     }
 
-    
+    @SuppressWarnings("unchecked")
+    private static <T> void bulk_load(BPlusTreeIndexFile<T> indexFile, List<Object> keys, long[] rids, double fill_factor) {
+        indexFile.bulkLoad((List<T>) keys, rids, fill_factor);
+    }
 
+    // adds every non null value of column to indexFile, in block and slot order
+    @SuppressWarnings("unchecked")
+    private <T> void build_index(BPlusTreeIndexFile<T> indexFile, int file_id, TableSchema schema, int column) {
+        int block_id=1;
+        ByteBuffer data;
+        byte[] scratch = new byte[4096];
+        while((data = db.get_view(file_id, block_id))!=null){
+            int numRecords = (data.get(0) << 8) | (data.get(1) & 0xFF);
+            for(int i=0;i<numRecords;i++){
+                // deleted record, see File.DEAD_SLOT
+                if((data.get(2*i+2) & 0x80) != 0){
+                    continue;
+                }
+                int recordoffset= (data.get(2*i+2) << 8) | (data.get(2*i+3) & 0xFF);
+                T value = (T) schema.decode_column(data, recordoffset, column, scratch);
+                if(value != null){
+                    indexFile.insert(value,block_id,i);
+                }
+            }
+
+            block_id+=1;
+        }
+    }
 
     public int search(String table_name, String column_name, RexLiteral value) {
+        materialize(table_name);
         /* Write your code here */
         // Check if the table exists
         if (!check_file_exists(table_name)) {
@@ -659,18 +785,323 @@ public class StorageManager {
         if (!check_index_exists(table_name, column_name)) {
             return -1;
         }
+        int table_id = file_to_fileid.get(table_name);
+        TableSchema schema = get_schema(table_name);
+        Object key = literal_value(value, schema, schema.get_column_index(column_name));
+        if (key == null) {
+            return -1;
+        }
+
         int file_id =file_to_fileid.get(index_file_name);
-        int block_id= db.search_index(file_id,value);
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(table_id).readLock();
+        lock.lock();
+        try {
+            return db.search_index(file_id, key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // RID of the first row whose column_name equals value, -1 if there is none or the column has no index
+    // the row itself is read with get_record
+    public long search_rid(String table_name, String column_name, RexLiteral value) {
+        materialize(table_name);
+        if (!check_file_exists(table_name) || !check_index_exists(table_name, column_name)) {
+            return -1;
+        }
+        int table_id = file_to_fileid.get(table_name);
+        TableSchema schema = get_schema(table_name);
+        Object key = literal_value(value, schema, schema.get_column_index(column_name));
+        if (key == null) {
+            return -1;
+        }
+
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(table_id).readLock();
+        lock.lock();
+        try {
+            return db.search_index_rid(file_to_fileid.get(index_name(table_name, column_name)), key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // RIDs of all rows whose column_name equals value, in RID order
+    // returns null if the table does not exist or the column has no index, the rows are read with get_record
+    public List<Long> search_all(String table_name, String column_name, RexLiteral value) {
+        return search_range(table_name, column_name, value, true, value, true);
+    }
 
-        return block_id;
+    // RIDs of the rows whose column_name is between lower and upper, in the order of the index
+    // a null bound is an open end, an exclusive bound leaves out the rows equal to it
+    // returns null if the table does not exist or the column has no index, the rows are read with get_record
+    public List<Long> search_range(String table_name, String column_name, RexLiteral lower, boolean lower_inclusive,
+                                   RexLiteral upper, boolean upper_inclusive) {
+        List<Long> rids = new ArrayList<>();
+        return scan_range(table_name, column_name, lower, lower_inclusive, upper, upper_inclusive, rids::add) ? rids : null;
     }
 
+    // like search_range, but returns the records that pass filter instead of their RIDs, in schema order
+    // the index is scanned and the records are read under one read lock, so rows moved by vacuum_block in
+    // between are not missed
+    public List<Object[]> get_records_in_range(String table_name, String column_name, RexLiteral lower, boolean lower_inclusive,
+                                               RexLiteral upper, boolean upper_inclusive, RecordPredicate filter) {
+        List<Object[]> records = new ArrayList<>();
+        boolean found = scan_range(table_name, column_name, lower, lower_inclusive, upper, upper_inclusive, rid -> {
+            Object[] record = get_record(table_name, rid, filter);
+            if (record != null) {
+                records.add(record);
+            }
+        });
+        return found ? records : null;
+    }
+
+    // calls visitor with the RID of every row in the range, under the read lock of the table
+    // false if the table does not exist or the column has no index
+    private boolean scan_range(String table_name, String column_name, RexLiteral lower, boolean lower_inclusive,
+                               RexLiteral upper, boolean upper_inclusive, LongConsumer visitor) {
+        materialize(table_name);
+        if (!check_file_exists(table_name) || !check_index_exists(table_name, column_name)) {
+            return false;
+        }
+        int table_id = file_to_fileid.get(table_name);
+        TableSchema schema = get_schema(table_name);
+        int column = schema.get_column_index(column_name);
+        Object lower_key = lower == null ? null : literal_value(lower, schema, column);
+        Object upper_key = upper == null ? null : literal_value(upper, schema, column);
+        if (schema.get_java_class(column) == Integer.class) {
+            // a bound beyond the int range is an open end or leaves no rows, a rounded bound takes in the
+            // int it was rounded to
+            BigDecimal low = lower == null ? null : int_bound(lower, RoundingMode.CEILING);
+            if (low != null) {
+                if (low.compareTo(INT_MAX) > 0) {
+                    return true;
+                }
+                lower_inclusive |= low.compareTo(lower.getValueAs(BigDecimal.class)) != 0;
+                lower_key = low.compareTo(INT_MIN) < 0 ? null : low.intValue();
+            }
+            BigDecimal high = upper == null ? null : int_bound(upper, RoundingMode.FLOOR);
+            if (high != null) {
+                if (high.compareTo(INT_MIN) < 0) {
+                    return true;
+                }
+                upper_inclusive |= high.compareTo(upper.getValueAs(BigDecimal.class)) != 0;
+                upper_key = high.compareTo(INT_MAX) > 0 ? null : high.intValue();
+            }
+        }
+        ReentrantReadWriteLock.ReadLock lock = db.get_lock(table_id).readLock();
+        lock.lock();
+        try {
+            IndexCursor<Object> cursor = db.scan_index(file_to_fileid.get(index_name(table_name, column_name)),
+                    lower_key, lower_inclusive, upper_key, upper_inclusive);
+            while (cursor.next()) {
+                visitor.accept(cursor.getRid());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    // deletes every row whose column_name equals value, false if there is none
+    // an index on column_name finds the rows, otherwise every block is read
     public boolean delete(String table_name, String column_name, RexLiteral value) {
+        materialize(table_name);
         /* Write your code here */
         // Hint: You need to delete from both - the file and the index
+        if (!check_file_exists(table_name)) {
+            return false;
+        }
+        int file_id = file_to_fileid.get(table_name);
+        TableSchema schema = get_schema(table_name);
+        String[] colnames = schema.get_names();
+        int column = schema.get_column_index(column_name);
+        if (column == -1) {
+            return false;
+        }
+        Object key = literal_value(value, schema, column);
+        if (key == null) {
+            return false;
+        }
+        File file = db.get_relational_file(file_id);
+
+        boolean deleted = false;
+        ReentrantReadWriteLock.WriteLock lock = db.get_lock(file_id).writeLock();
+        lock.lock();
+        try {
+            if (check_index_exists(table_name, column_name)) {
+                // only the rows the index has for key are read, the entries are collected first as deleting
+                // changes the index
+                List<Long> rids = new ArrayList<>();
+                IndexCursor<Object> cursor = db.scan_index(file_to_fileid.get(index_name(table_name, column_name)), key, true, key, true);
+                while (cursor.next()) {
+                    rids.add(cursor.getRid());
+                }
+                for (long rid : rids) {
+                    Object[] record = get_record(table_name, rid);
+                    if (record != null) {
+                        delete_record(table_name, colnames, file, rid, record);
+                        deleted = true;
+                    }
+                }
+                commit();
+                return deleted;
+            }
+
+            for (int block_id = 1; block_id < file.get_num_blocks(); block_id++) {
+                // rows come in slot order, without the deleted ones
+                List<Object[]> rows = get_records_from_block(table_name, block_id);
+                int row = 0;
+                for (int slot = 0; slot < file.get_num_slots(block_id); slot++) {
+                    if (file.is_deleted(block_id, slot)) {
+                        continue;
+                    }
+                    Object[] record = rows.get(row++);
+                    if (!key.equals(record[column])) {
+                        continue;
+                    }
+                    delete_record(table_name, colnames, file, RecordId.make(block_id, slot), record);
+                    deleted = true;
+                }
+            }
+            commit();
+        } finally {
+            lock.unlock();
+        }
+        return deleted;
+    }
+
+    // removes record, the row at rid, from the table and its entries from every index of the table
+    // the caller holds the write lock
+    private void delete_record(String table_name, String[] colnames, File file, long rid, Object[] record) {
+        file.delete_record(RecordId.block_id(rid), RecordId.slot(rid));
+        for (int i = 0; i < colnames.length; i++) {
+            if (record[i] != null && check_index_exists(table_name, colnames[i])) {
+                db.delete_from_index(file_to_fileid.get(index_name(table_name, colnames[i])), record[i], rid);
+            }
+        }
+    }
+
+    // tables, i.e. relational files, loaded by this StorageManager - deferred tables are left out
+    public List<String> get_tables() {
+        List<String> tables = new ArrayList<>();
+        for (String name : file_to_fileid.keySet()) {
+            if (db.get_relational_file(file_to_fileid.get(name)) != null) {
+                tables.add(name);
+            }
+        }
+        return tables;
+    }
+
+    // one incremental vacuum step on table_name, see Vacuum
+    // compacts block_id if it holds deleted records, then moves the next non-empty block into it if the
+    // records of both fit into one block and one of them is at most half full
+    // index entries of moved records are pointed at block_id
+    // Compacting keeps every record in its slot. Moving does not, a scan that has copied block_id but not the
+    // next block would miss the moved records, so they are not moved while an open cursor is in between,
+    // see open_cursor. Loops over get_records_from_block are not seen, run them without a Vacuum or use a cursor
+    // An emptied block stays in the table with no slots, the free space map hands it to later inserts, see
+    // insert_row. Blocks are never dropped, so block ids and RIDs of other records stay valid
+    // returns the block the next step should start at, -1 once the end of the table is reached
+    public int vacuum_block(String table_name, int block_id) {
+        // a deferred table has nothing to vacuum yet
+        if (file_to_fileid.get(table_name) == null) {
+            return -1;
+        }
+        int file_id = file_to_fileid.get(table_name);
+        File file = db.get_relational_file(file_id);
+        block_id = Math.max(block_id, 1);
+
+        ReentrantReadWriteLock.WriteLock lock = db.get_lock(file_id).writeLock();
+        lock.lock();
+        try {
+            int num_blocks = file.get_num_blocks();
+            if (block_id >= num_blocks) {
+                return -1;
+            }
+            if (file.has_dead_space(block_id)) {
+                file.compact_block(block_id);
+            }
+
+            int next = block_id + 1;
+            while (next < num_blocks) {
+                if (file.has_dead_space(next)) {
+                    file.compact_block(next);
+                }
+                if (file.get_num_slots(next) > 0) {
+                    break;
+                }
+                next++;
+            }
+            if (next >= num_blocks) {
+                commit();
+                return -1;
+            }
+
+            if ((!file.is_sparse(block_id) && !file.is_sparse(next)) || scan_between(file_id, block_id, next)) {
+                commit();
+                return next;
+            }
+            // rows come in slot order, without the deleted ones
+            List<Object[]> rows = get_records_from_block(table_name, next);
+            int[] moved = file.move_records(next, block_id);
+            if (moved == null) {
+                commit();
+                return next;
+            }
+
+            String[] colnames = get_schema(table_name).get_names();
+            for (int i = 0; i < colnames.length; i++) {
+                if (!check_index_exists(table_name, colnames[i])) {
+                    continue;
+                }
+                int index_id = file_to_fileid.get(index_name(table_name, colnames[i]));
+                int row = 0;
+                for (int slot = 0; slot < moved.length; slot++) {
+                    if (moved[slot] == -1) {
+                        continue;
+                    }
+                    Object value = rows.get(row++)[i];
+                    if (value != null) {
+                        db.update_index(index_id, value, RecordId.make(next, slot), RecordId.make(block_id, moved[slot]));
+                    }
+                }
+            }
+            commit();
+
+            // more may fit into block_id
+            return block_id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // true if an open cursor of file_id has copied block from but not block to yet
+    private boolean scan_between(int file_id, int from, int to) {
+        Set<AtomicInteger> scans = open_scans.get(file_id);
+        if (scans == null) {
+            return false;
+        }
+        for (AtomicInteger position : scans) {
+            if (position.get() >= from && position.get() < to) {
+                return true;
+            }
+        }
         return false;
     }
 
+    // vacuums the whole of table_name in one go
+    public void vacuum(String table_name) {
+        int block_id = 1;
+        while (block_id != -1) {
+            block_id = vacuum_block(table_name, block_id);
+        }
+    }
+
+    // releases on-disk pages held by the DB
+    public void close() {
+        db.close();
+    }
+
     // will be used for evaluation - DO NOT modify
     public DB getDb() {
         return db;
@@ -687,21 +1118,4 @@ public class StorageManager {
         return null;
     }
 
-     private <T> T convertBytesToT1(byte[] bytes, Class<T> typeClass) {
-        if (typeClass.equals(String.class)) {
-            return typeClass.cast(new String(bytes));
-        } else if (typeClass.equals(Integer.class)) {
-            return typeClass.cast(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt());
-        } else if (typeClass.equals(Boolean.class)) {
-            return typeClass.cast(bytes[0] != 0);
-        } else if (typeClass.equals(Float.class)) {
-            return typeClass.cast(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getFloat());
-        } else if (typeClass.equals(Double.class)) {
-            return typeClass.cast(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getDouble());
-        } else {
-            // Handle unsupported types or return null
-            return null;
-        }
-    }
-
 }
\ No newline at end of file
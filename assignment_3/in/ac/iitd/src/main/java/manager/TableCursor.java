@@ -0,0 +1,169 @@
+package manager;
+
+import storage.RecordId;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    * Streams the records of a table one at a time, opened by StorageManager.open_cursor.
+    *     try (TableCursor cursor = storage_manager.open_cursor("actor", null, null)) {
+    *         while (cursor.next()) {
+    *             Object[] row = cursor.get_row();
+    *         }
+    *     }
+    * Each block is copied once, under the read lock of the table, into a buffer of the cursor and records
+    * are decoded from the copy as next is called. A scan holds at most two blocks and one row no matter how
+    * big the table is, and stopping early skips the remaining blocks.
+    *
+    * The row array is reused - its values change on every call to next, copy it to keep it. The records
+    * of one block are read consistently, changes to blocks not reached yet are seen by the scan. Until the
+    * cursor is closed, or has read its last record, StorageManager.vacuum_block moves no rows from blocks
+    * it has not copied into blocks it has, so no row is missed. A cursor that is dropped without being
+    * closed is closed by a Cleaner once it is garbage collected.
+    * With prefetch the next block is copied by a background thread while the current one is consumed,
+    * which hides the page reads of tables kept on disk. A cursor is not thread safe.
+ */
+public class TableCursor implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final ExecutorService PREFETCH = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "table-cursor-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StorageManager storage_manager;
+    private final int file_id;
+    // the last block copied, read by vacuum_block
+    private final AtomicInteger position;
+    private final Cleaner.Cleanable cleanable;
+    private final TableSchema schema;
+    private final int[] columns;
+    private final RecordPredicate filter;
+    private final boolean prefetch;
+
+    private final Object[] row;
+    private final byte[] scratch;
+
+    // the block being read, and the one being prefetched into spare
+    private ByteBuffer block;
+    private ByteBuffer spare;
+    private CompletableFuture<Boolean> pending;
+
+    private int block_id;
+    private int num_records;
+    private int slot;
+    private boolean closed;
+
+    TableCursor(StorageManager storage_manager, int file_id, AtomicInteger position, TableSchema schema, int[] columns,
+                RecordPredicate filter, boolean prefetch, int block_size) {
+        this.storage_manager = storage_manager;
+        this.file_id = file_id;
+        this.position = position;
+        // the action must not hold the cursor, or it would never be collected
+        this.cleanable = CLEANER.register(this, () -> storage_manager.scan_closed(file_id, position));
+        this.schema = schema;
+        this.columns = columns;
+        this.filter = filter;
+        this.prefetch = prefetch;
+        this.row = new Object[columns == null ? schema.get_num_columns() : columns.length];
+        this.scratch = new byte[block_size];
+        this.block = ByteBuffer.wrap(new byte[block_size]).order(ByteOrder.LITTLE_ENDIAN);
+        this.spare = ByteBuffer.wrap(new byte[block_size]).order(ByteOrder.LITTLE_ENDIAN);
+        // block 0 holds the schema
+        this.block_id = 0;
+        this.slot = 0;
+        this.num_records = 0;
+        if (prefetch) {
+            start_prefetch(1);
+        }
+    }
+
+    // moves to the next record that passes the filter, false once there are none left
+    public boolean next() {
+        while (!closed) {
+            while (slot < num_records) {
+                int s = slot++;
+                // deleted record, see File.DEAD_SLOT
+                if ((block.get(2 * s + 2) & 0x80) != 0) {
+                    continue;
+                }
+                int record_offset = (block.get(2 * s + 2) << 8) | (block.get(2 * s + 3) & 0xFF);
+                if (filter != null && !filter.test(block, record_offset)) {
+                    continue;
+                }
+                decode(record_offset);
+                return true;
+            }
+            if (!next_block()) {
+                close();
+            }
+        }
+        return false;
+    }
+
+    private void decode(int record_offset) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = schema.decode_column(block, record_offset, columns == null ? i : columns[i], scratch);
+        }
+    }
+
+    // makes block_id + 1 the current block, false if there is no such block
+    private boolean next_block() {
+        boolean found;
+        if (prefetch) {
+            found = pending.join();
+            ByteBuffer swap = block;
+            block = spare;
+            spare = swap;
+        } else {
+            found = storage_manager.copy_block(file_id, position, block_id + 1, block.array());
+        }
+        if (!found) {
+            return false;
+        }
+        block_id++;
+        slot = 0;
+        num_records = (block.get(0) << 8) | (block.get(1) & 0xFF);
+        if (prefetch) {
+            start_prefetch(block_id + 1);
+        }
+        return true;
+    }
+
+    private void start_prefetch(int next_block_id) {
+        byte[] buffer = spare.array();
+        pending = CompletableFuture.supplyAsync(() -> storage_manager.copy_block(file_id, position, next_block_id, buffer), PREFETCH);
+    }
+
+    // the current record, in schema order or in the order of the columns the cursor was opened with
+    public Object[] get_row() {
+        return row;
+    }
+
+    // RID of the current record, see storage.RecordId
+    public long get_rid() {
+        return RecordId.make(block_id, slot - 1);
+    }
+
+    // waits for a prefetch still running, so no copy is made after close returns
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cleanable.clean();
+        if (pending != null) {
+            pending.join();
+            pending = null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package manager;
+
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+    * Compiled schema of a table, built once from its schema block (block 0) and cached by StorageManager.
+    *
+    * Columns are numbered in schema order - fixed length columns first, then variable length ones.
+    * Record layout - (offset, len) of each var field | fixed fields | null bitmap | var field data
+    * Offsets, lengths and fixed fields are little endian, offsets are from the start of the record.
+    * Bit 7 - (i % 8) of bitmap byte i / 8 is set if column i is null.
+ */
+public class TableSchema {
+
+    // type tags, same as the ordinals of StorageManager.ColumnType
+    public static final int VARCHAR = 0;
+    public static final int INTEGER = 1;
+    public static final int BOOLEAN = 2;
+    public static final int FLOAT = 3;
+    public static final int DOUBLE = 4;
+
+    private static final int[] FIXED_SIZE = { 0, 4, 1, 4, 8 };
+    private static final Class<?>[] JAVA_CLASS = { String.class, Integer.class, Boolean.class, Float.class, Double.class };
+
+    private final String[] names;
+    private final int[] types;
+    private final HashMap<String, Integer> column_index;
+
+    private final int num_fixed;
+    private final int num_var;
+
+    // fixed columns - offset of the value in the record
+    // var columns - offset of its (offset, len) pair in the record
+    private final int[] field_offset;
+
+    private final int bitmap_offset;
+    private final int bitmap_size;
+
+    // length of the record before the var field data
+    private final int header_size;
+
+    private TableSchema(String[] names, int[] types) {
+        this.names = names;
+        this.types = types;
+        this.column_index = new HashMap<>();
+
+        int fixed = 0;
+        int var = 0;
+        int fixed_size = 0;
+        for(int i = 0; i < types.length; i++){
+            column_index.put(names[i], i);
+            if(types[i] == VARCHAR){
+                var++;
+            } else {
+                fixed++;
+                fixed_size += FIXED_SIZE[types[i]];
+            }
+        }
+        this.num_fixed = fixed;
+        this.num_var = var;
+
+        this.field_offset = new int[types.length];
+        int offset = 4 * num_var;
+        int var_index = 0;
+        for(int i = 0; i < types.length; i++){
+            if(types[i] == VARCHAR){
+                field_offset[i] = 4 * var_index++;
+            } else {
+                field_offset[i] = offset;
+                offset += FIXED_SIZE[types[i]];
+            }
+        }
+        this.bitmap_offset = 4 * num_var + fixed_size;
+        this.bitmap_size = (types.length + 7) / 8;
+        this.header_size = bitmap_offset + bitmap_size;
+    }
+
+    // parses a schema block, see StorageManager.createSchemaBlock
+    public static TableSchema from_block(ByteBuffer block) {
+        int numCol = (block.get(0) & 0xFF) | ((block.get(1) & 0xFF) << 8);
+        String[] names = new String[numCol];
+        int[] types = new int[numCol];
+        for(int i = 0; i < numCol; i++){
+            int offset = (block.get(2 * i + 2) & 0xFF) | ((block.get(2 * i + 3) & 0xFF) << 8);
+            types[i] = block.get(offset) & 0xFF;
+            byte[] name = new byte[block.get(offset + 1) & 0xFF];
+            for(int j = 0; j < name.length; j++){
+                name[j] = block.get(offset + 2 + j);
+            }
+            names[i] = new String(name);
+        }
+        return new TableSchema(names, types);
+    }
+
+    // type tag of a column of a CSV file
+    public static int type_of(RelDataType type) {
+        return StorageManager.ColumnType.valueOf(type.getSqlTypeName().getName()).ordinal();
+    }
+
+    // schema position of each column of a CSV file with these types - fixed columns first, both in CSV order
+    public static int[] schema_positions(List<RelDataType> typeList) {
+        int[] positions = new int[typeList.size()];
+        int next = 0;
+        for(int pass = 0; pass < 2; pass++){
+            for(int i = 0; i < typeList.size(); i++){
+                boolean var = typeList.get(i).getSqlTypeName().getName().equals("VARCHAR");
+                if(var == (pass == 1)){
+                    positions[i] = next++;
+                }
+            }
+        }
+        return positions;
+    }
+
+    public int get_num_columns() {
+        return types.length;
+    }
+
+    public int get_num_fixed() {
+        return num_fixed;
+    }
+
+    public int get_num_var() {
+        return num_var;
+    }
+
+    public String get_name(int column) {
+        return names[column];
+    }
+
+    public String[] get_names() {
+        return names.clone();
+    }
+
+    public int get_type(int column) {
+        return types[column];
+    }
+
+    public Class<?> get_java_class(int column) {
+        return JAVA_CLASS[types[column]];
+    }
+
+    // -1 if there is no such column
+    public int get_column_index(String name) {
+        Integer column = column_index.get(name);
+        return column == null ? -1 : column;
+    }
+
+    public boolean is_fixed(int column) {
+        return types[column] != VARCHAR;
+    }
+
+    public int get_fixed_size(int column) {
+        return FIXED_SIZE[types[column]];
+    }
+
+    public int get_field_offset(int column) {
+        return field_offset[column];
+    }
+
+    public int get_bitmap_offset() {
+        return bitmap_offset;
+    }
+
+    public int get_bitmap_size() {
+        return bitmap_size;
+    }
+
+    public int get_header_size() {
+        return header_size;
+    }
+
+    public boolean is_null(ByteBuffer block, int record_offset, int column) {
+        int bits = block.get(record_offset + bitmap_offset + column / 8);
+        return (bits & (1 << (7 - column % 8))) != 0;
+    }
+
+    // value of one column of the record at record_offset of a little endian block view
+    // scratch must hold the longest var field, up to a block
+    public Object decode_column(ByteBuffer block, int record_offset, int column, byte[] scratch) {
+        if(is_null(block, record_offset, column)){
+            return null;
+        }
+        int offset = record_offset + field_offset[column];
+        switch (types[column]) {
+            case INTEGER:
+                return block.getInt(offset);
+            case BOOLEAN:
+                return block.get(offset) != 0;
+            case FLOAT:
+                return block.getFloat(offset);
+            case DOUBLE:
+                return block.getDouble(offset);
+            default:
+                int start = block.getShort(offset) & 0xFFFF;
+                int length = block.getShort(offset + 2) & 0xFFFF;
+                for(int i = 0; i < length; i++){
+                    scratch[i] = block.get(record_offset + start + i);
+                }
+                return new String(scratch, 0, length);
+        }
+    }
+
+    // every column of the record at record_offset, in schema order
+    public Object[] decode(ByteBuffer block, int record_offset, byte[] scratch) {
+        Object[] row = new Object[types.length];
+        for(int i = 0; i < types.length; i++){
+            row[i] = decode_column(block, record_offset, i, scratch);
+        }
+        return row;
+    }
+
+    // only the given columns of the record at record_offset, in that order
+    // var fields of other columns are skipped without reading them
+    public Object[] decode(ByteBuffer block, int record_offset, int[] columns, byte[] scratch) {
+        Object[] row = new Object[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            row[i] = decode_column(block, record_offset, columns[i], scratch);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,92 @@
+package manager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    * Incremental vacuum of every table of a StorageManager.
+    * Each step is one StorageManager.vacuum_block call, so a table is only locked for one block pair
+    * at a time and queries run in between steps. Passes over all tables repeat for as long as it runs.
+ */
+public class Vacuum {
+
+    private final StorageManager storage_manager;
+    private final long period_ms;
+
+    private List<String> tables;
+    private int table_index;
+    private int block_id;
+
+    private Thread worker;
+    private volatile boolean stopped;
+    private final Object pause = new Object();
+
+    // period_ms is the pause after every step
+    public Vacuum(StorageManager storage_manager, long period_ms) {
+        this.storage_manager = storage_manager;
+        this.period_ms = Math.max(1, period_ms);
+        this.tables = new ArrayList<>();
+        this.block_id = 1;
+    }
+
+    // runs one step, returns false once the current pass over all tables is done
+    public synchronized boolean step() {
+        if(table_index >= tables.size()){
+            // start the next pass, tables may have been added since the last one
+            tables = storage_manager.get_tables();
+            table_index = 0;
+            block_id = 1;
+            if(tables.isEmpty()){
+                return false;
+            }
+        }
+        block_id = storage_manager.vacuum_block(tables.get(table_index), block_id);
+        if(block_id == -1){
+            table_index++;
+            block_id = 1;
+        }
+        return table_index < tables.size();
+    }
+
+    // runs steps until a whole pass over all tables is done
+    public void run_pass() {
+        boolean more = true;
+        while(more){
+            more = step();
+        }
+    }
+
+    public void start() {
+        worker = new Thread(() -> {
+            while(!stopped){
+                step();
+                synchronized (pause) {
+                    try {
+                        if(!stopped){
+                            pause.wait(period_ms);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "vacuum");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // waits for the running step to finish
+    public void stop() {
+        synchronized (pause) {
+            stopped = true;
+            pause.notifyAll();
+        }
+        if(worker != null){
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
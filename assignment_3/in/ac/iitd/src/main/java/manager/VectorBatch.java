@@ -0,0 +1,279 @@
+package manager;
+
+import storage.RecordId;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+    * Some columns of the records of one block, one primitive array per column instead of a boxed Object[]
+    * per row, filled by StorageManager.read_batch.
+    *
+    * Vector i holds schema column get_column(i). INTEGER and BOOLEAN (0 or 1) values are in an int[], FLOAT
+    * and DOUBLE values in a double[]. VARCHAR values are slices of a byte[] per vector, given by offset and
+    * length arrays, with the bytes String.getBytes gives. Null rows have their bit set in a long[] mask per
+    * vector, the value under it is 0 or an empty slice.
+    *
+    * The selection vector lists the rows an operator still has to look at, in ascending order, e.g.
+    *     int[] selection = batch.get_selection();
+    *     int[] ids = batch.get_ints(0);
+    *     int count = 0;
+    *     for(int k = 0; k < batch.get_selected(); k++){
+    *         int row = selection[k];
+    *         if(ids[row] < 1000) selection[count++] = row;
+    *     }
+    *     batch.set_selected(count);
+    * Filling a batch selects every row, or the rows that pass the filter given to read_batch.
+    * Arrays are reused from block to block and only grow, so keep no references to them across fills.
+ */
+public class VectorBatch {
+
+    private final TableSchema schema;
+    private final int[] columns;
+
+    private int capacity;
+    private int size;
+    private int block_id;
+
+    // per vector, only the array for the type of its column is allocated
+    private final int[][] ints;
+    private final double[][] doubles;
+    private final byte[][] bytes;
+    private final int[][] offsets;
+    private final int[][] lengths;
+    private final long[][] nulls;
+
+    private int[] slots;
+    private int[] record_offsets;
+    private int[] selection;
+    private int selected;
+
+    VectorBatch(TableSchema schema, int[] columns) {
+        this.schema = schema;
+        this.columns = columns;
+        int n = columns.length;
+        this.ints = new int[n][];
+        this.doubles = new double[n][];
+        this.bytes = new byte[n][];
+        this.offsets = new int[n][];
+        this.lengths = new int[n][];
+        this.nulls = new long[n][];
+        for(int i = 0; i < n; i++){
+            if(schema.get_type(columns[i]) == TableSchema.VARCHAR){
+                bytes[i] = new byte[4096];
+            }
+        }
+        allocate(256);
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        for(int i = 0; i < columns.length; i++){
+            switch (schema.get_type(columns[i])) {
+                case TableSchema.INTEGER:
+                case TableSchema.BOOLEAN:
+                    ints[i] = new int[capacity];
+                    break;
+                case TableSchema.FLOAT:
+                case TableSchema.DOUBLE:
+                    doubles[i] = new double[capacity];
+                    break;
+                default:
+                    offsets[i] = new int[capacity];
+                    lengths[i] = new int[capacity];
+            }
+            nulls[i] = new long[(capacity + 63) / 64];
+        }
+        slots = new int[capacity];
+        record_offsets = new int[capacity];
+        selection = new int[capacity];
+    }
+
+    // number of vectors
+    public int get_num_vectors() {
+        return columns.length;
+    }
+
+    // schema column held by vector i
+    public int get_column(int i) {
+        return columns[i];
+    }
+
+    public int get_type(int i) {
+        return schema.get_type(columns[i]);
+    }
+
+    // number of rows, selected or not
+    public int get_size() {
+        return size;
+    }
+
+    public int get_block_id() {
+        return block_id;
+    }
+
+    // RID of a row, see storage.RecordId
+    public long get_rid(int row) {
+        return RecordId.make(block_id, slots[row]);
+    }
+
+    public int[] get_ints(int i) {
+        return ints[i];
+    }
+
+    public double[] get_doubles(int i) {
+        return doubles[i];
+    }
+
+    public byte[] get_bytes(int i) {
+        return bytes[i];
+    }
+
+    public int[] get_offsets(int i) {
+        return offsets[i];
+    }
+
+    public int[] get_lengths(int i) {
+        return lengths[i];
+    }
+
+    // bit row % 64 of word row / 64 is set if the row is null
+    public long[] get_nulls(int i) {
+        return nulls[i];
+    }
+
+    public boolean is_null(int i, int row) {
+        return (nulls[i][row >>> 6] & (1L << row)) != 0;
+    }
+
+    public String get_string(int i, int row) {
+        return is_null(i, row) ? null : new String(bytes[i], offsets[i][row], lengths[i][row]);
+    }
+
+    // boxed value of a row, as get_records_from_block would give it
+    public Object get_value(int i, int row) {
+        if(is_null(i, row)){
+            return null;
+        }
+        switch (get_type(i)) {
+            case TableSchema.INTEGER:
+                return ints[i][row];
+            case TableSchema.BOOLEAN:
+                return ints[i][row] != 0;
+            case TableSchema.FLOAT:
+                return (float) doubles[i][row];
+            case TableSchema.DOUBLE:
+                return doubles[i][row];
+            default:
+                return get_string(i, row);
+        }
+    }
+
+    public int[] get_selection() {
+        return selection;
+    }
+
+    public int get_selected() {
+        return selected;
+    }
+
+    // after writing the first count entries of get_selection
+    public void set_selected(int count) {
+        selected = count;
+    }
+
+    // decodes the live records of a little endian block view, selects those that pass filter
+    void fill(ByteBuffer block, int block_id, RecordPredicate filter) {
+        this.block_id = block_id;
+        int num_records = (block.get(0) << 8) | (block.get(1) & 0xFF);
+        if(num_records > capacity){
+            allocate(Math.max(num_records, 2 * capacity));
+        }
+
+        size = 0;
+        selected = 0;
+        for(int slot = 0; slot < num_records; slot++){
+            // deleted record, see File.DEAD_SLOT
+            if((block.get(2 * slot + 2) & 0x80) != 0){
+                continue;
+            }
+            int record_offset = (block.get(2 * slot + 2) << 8) | (block.get(2 * slot + 3) & 0xFF);
+            if(filter == null || filter.test(block, record_offset)){
+                selection[selected++] = size;
+            }
+            record_offsets[size] = record_offset;
+            slots[size++] = slot;
+        }
+
+        // one column at a time, so each loop reads one type from the same place in every record
+        for(int i = 0; i < columns.length; i++){
+            fill_vector(block, i);
+        }
+    }
+
+    private void fill_vector(ByteBuffer block, int i) {
+        int column = columns[i];
+        int field = schema.get_field_offset(column);
+        int null_byte = schema.get_bitmap_offset() + column / 8;
+        int null_bit = 1 << (7 - column % 8);
+        long[] nulls = this.nulls[i];
+        Arrays.fill(nulls, 0);
+        for(int row = 0; row < size; row++){
+            if((block.get(record_offsets[row] + null_byte) & null_bit) != 0){
+                nulls[row >>> 6] |= 1L << row;
+            }
+        }
+
+        // fields of null rows are zeroed, or an empty pair for var columns, see RecordEncoder.put_null
+        switch (schema.get_type(column)) {
+            case TableSchema.INTEGER: {
+                int[] values = ints[i];
+                for(int row = 0; row < size; row++){
+                    values[row] = block.getInt(record_offsets[row] + field);
+                }
+                break;
+            }
+            case TableSchema.BOOLEAN: {
+                int[] values = ints[i];
+                for(int row = 0; row < size; row++){
+                    values[row] = block.get(record_offsets[row] + field) != 0 ? 1 : 0;
+                }
+                break;
+            }
+            case TableSchema.FLOAT: {
+                double[] values = doubles[i];
+                for(int row = 0; row < size; row++){
+                    values[row] = block.getFloat(record_offsets[row] + field);
+                }
+                break;
+            }
+            case TableSchema.DOUBLE: {
+                double[] values = doubles[i];
+                for(int row = 0; row < size; row++){
+                    values[row] = block.getDouble(record_offsets[row] + field);
+                }
+                break;
+            }
+            default: {
+                int[] offsets = this.offsets[i];
+                int[] lengths = this.lengths[i];
+                byte[] data = bytes[i];
+                int end = 0;
+                for(int row = 0; row < size; row++){
+                    int record_offset = record_offsets[row];
+                    int start = record_offset + (block.getShort(record_offset + field) & 0xFFFF);
+                    int length = block.getShort(record_offset + field + 2) & 0xFFFF;
+                    if(end + length > data.length){
+                        data = bytes[i] = Arrays.copyOf(data, Math.max(end + length, 2 * data.length));
+                    }
+                    for(int b = 0; b < length; b++){
+                        data[end + b] = block.get(start + b);
+                    }
+                    offsets[row] = end;
+                    lengths[row] = length;
+                    end += length;
+                }
+            }
+        }
+    }
+}
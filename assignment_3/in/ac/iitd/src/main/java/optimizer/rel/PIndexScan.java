@@ -1,37 +1,69 @@
 package optimizer.rel;
 
+import org.apache.calcite.DataContexts;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexExecutable;
+import org.apache.calcite.rex.RexExecutorImpl;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
 
+import manager.RecordPredicate;
 import manager.StorageManager;
+import manager.TableCursor;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 // Operator trigged when doing indexed scan
 // Matches SFW queries with indexed columns in the WHERE clause
 public class PIndexScan extends TableScan implements PRel {
+
+        // comparisons with a literal that bound the keys of an index
+        private static final Set<SqlKind> BOUNDS = EnumSet.of(SqlKind.EQUALS, SqlKind.LESS_THAN,
+                SqlKind.LESS_THAN_OR_EQUAL, SqlKind.GREATER_THAN, SqlKind.GREATER_THAN_OR_EQUAL);
     
         private final List<RexNode> projects;
+        // row type of the table, the filter and the projections refer to its fields
         private final RelDataType rowType;
+        // row type of the projections, the rows evaluate returns
+        private final RelDataType projectRowType;
         private final RelOptTable table;
         private final RexNode filter;
     
-        public PIndexScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, RexNode filter, List<RexNode> projects) {
+        public PIndexScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, RexNode filter, List<RexNode> projects,
+                          RelDataType projectRowType) {
             super(cluster, traitSet, table);
             this.table = table;
-            this.rowType = deriveRowType();
+            this.rowType = table.getRowType();
+            this.projectRowType = projectRowType;
             this.filter = filter;
             this.projects = projects;
         }
     
         @Override
         public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
-            return new PIndexScan(getCluster(), traitSet, table, filter, projects);
+            return new PIndexScan(getCluster(), traitSet, table, filter, projects, projectRowType);
+        }
+
+        // it replaces the project, so it has the row type of the project
+        @Override
+        public RelDataType deriveRowType() {
+            return projectRowType;
         }
     
         @Override
@@ -54,7 +86,117 @@ public class PIndexScan extends TableScan implements PRel {
             System.out.println("Evaluating PIndexScan for table: " + tableName);
 
             /* Write your code here */
+            // null if the table does not exist
+            if (storage_manager.get_schema(tableName) == null) {
+                return null;
+            }
+            // the filter is tested on the encoded records when RecordPredicate supports it, columns are only
+            // decoded for plain column references
+            RecordPredicate predicate = storage_manager.compile_filter(tableName, rowType, filter);
+            int[] columns = storage_manager.project_columns(tableName, rowType, projects);
+            List<Object[]> rows = new ArrayList<>();
+            if (predicate != null && columns != null) {
+                scan(storage_manager, tableName, predicate, columns, rows::add);
+                return rows;
+            }
+
+            // anything else, e.g. LIKE, CAST or arithmetic, runs in code calcite generates for the filter (unless
+            // it compiled) and the projections, on whole records in the order of rowType
+            List<RexNode> expressions = new ArrayList<>();
+            if (predicate == null) {
+                expressions.add(filter);
+            }
+            expressions.addAll(projects);
+            RexExecutable executable = RexExecutorImpl.getExecutable(getCluster().getRexBuilder(), expressions, rowType);
+            int first = expressions.size() - projects.size();
+            int[] fields = storage_manager.get_columns(tableName, rowType.getFieldNames());
+            scan(storage_manager, tableName, predicate, fields, record -> {
+                executable.setDataContext(DataContexts.of(Collections.singletonMap("inputRecord", record)));
+                Object[] values = executable.execute();
+                // a null filter value, e.g. of a null column, does not pass
+                if (first == 0 || Boolean.TRUE.equals(values[0])) {
+                    rows.add(Arrays.copyOfRange(values, first, values.length));
+                }
+            });
+            return rows;
+        }
+
+        // calls visitor with the given schema columns of every record that passes predicate, in a new array
+        // predicate == null passes every record
+        private void scan(StorageManager storage_manager, String tableName, RecordPredicate predicate, int[] columns,
+                          Consumer<Object[]> visitor) {
+            List<Object[]> records = searchIndex(storage_manager, tableName, predicate);
+            if (records == null) {
+                // no index on a column bounded by the filter, every record is tested
+                try (TableCursor cursor = storage_manager.open_cursor(tableName, columns, predicate)) {
+                    while (cursor.next()) {
+                        visitor.accept(cursor.get_row().clone());
+                    }
+                }
+                return;
+            }
+
+            for (Object[] record : records) {
+                Object[] row = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = record[columns[i]];
+                }
+                visitor.accept(row);
+            }
+        }
 
-            return null;
+        // records in the range the filter gives the first indexed column it compares with a literal, one
+        // scan of that index. null if there is no such column
+        // The index only narrows down the records, the whole filter is still tested on each of them, by
+        // predicate or by the caller when it is null
+        // Bounds are inclusive, get_records_in_range rounds them to the values the column can hold
+        private List<Object[]> searchIndex(StorageManager storage_manager, String tableName, RecordPredicate predicate) {
+            String column = null;
+            RexLiteral lower = null;
+            RexLiteral upper = null;
+            RexNode condition = RexUtil.expandSearch(getCluster().getRexBuilder(), null, filter);
+            for (RexNode conjunct : RelOptUtil.conjunctions(condition)) {
+                if (!(conjunct instanceof RexCall) || ((RexCall) conjunct).getOperands().size() != 2) {
+                    continue;
+                }
+                SqlKind kind = conjunct.getKind();
+                RexNode left = ((RexCall) conjunct).getOperands().get(0);
+                RexNode right = ((RexCall) conjunct).getOperands().get(1);
+                if (left instanceof RexLiteral && right instanceof RexInputRef) {
+                    RexNode swap = left;
+                    left = right;
+                    right = swap;
+                    kind = kind.reverse();
+                }
+                if (!BOUNDS.contains(kind) || !(left instanceof RexInputRef) || !(right instanceof RexLiteral)
+                        || ((RexLiteral) right).isNull()) {
+                    continue;
+                }
+                String name = rowType.getFieldNames().get(((RexInputRef) left).getIndex());
+                if (column == null && storage_manager.check_index_exists(tableName, name)) {
+                    column = name;
+                }
+                if (!name.equals(column)) {
+                    continue;
+                }
+                RexLiteral literal = (RexLiteral) right;
+                switch (kind) {
+                    case EQUALS:
+                        lower = literal;
+                        upper = literal;
+                        break;
+                    case GREATER_THAN:
+                    case GREATER_THAN_OR_EQUAL:
+                        lower = lower == null ? literal : lower;
+                        break;
+                    default:
+                        upper = upper == null ? literal : upper;
+                        break;
+                }
+            }
+            if (column == null || (lower == null && upper == null)) {
+                return null;
+            }
+            return storage_manager.get_records_in_range(tableName, column, lower, true, upper, true, predicate);
         }
 }
\ No newline at end of file
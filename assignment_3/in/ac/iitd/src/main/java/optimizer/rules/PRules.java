@@ -28,7 +28,8 @@ public class PRules {
             final LogicalProject project = call.rel(0);
             final LogicalFilter filter = call.rel(1);
             final CsvTableScan scan = call.rel(2);
-            call.transformTo(new PIndexScan(scan.getCluster(), scan.getTraitSet().replace(PConvention.INSTANCE), scan.getTable(), filter.getCondition(), project.getProjects()));
+            call.transformTo(new PIndexScan(scan.getCluster(), scan.getTraitSet().replace(PConvention.INSTANCE), scan.getTable(), filter.getCondition(), project.getProjects(),
+                    project.getRowType()));
         }
 
     }
@@ -1,48 +1,127 @@
 package storage;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 // Abstract Block class - 4kB fixed size blocks
 // will be extended by LLD block and TreeNode
 
 public abstract class AbstractBlock {
-    
+
     protected static final int block_capacity = 4096; // 4KB fixed size blocks
+
+    // bytes of the block, null if the block is a view of a mapped page
     protected byte[] data;
 
+    // little endian view of the same bytes, used by the typed getters without copying
+    protected ByteBuffer buffer;
+
+    // set by the owning file when this block is added to it, see AbstractFile.add_block
+    AbstractFile<?> owner;
+    int block_id = -1;
+
+    // true if the block was modified since it was last written to disk
+    boolean dirty;
+
     protected AbstractBlock(byte[] data) {
         this.data = new byte[block_capacity];
-        
+
         // if data is larger than block_capacity, only copy block_capacity bytes
         int bytes_to_copy = Math.min(data.length, block_capacity);
         System.arraycopy(data, 0, this.data, 0, bytes_to_copy);
+        this.buffer = ByteBuffer.wrap(this.data).order(ByteOrder.LITTLE_ENDIAN);
         return;
     }
 
     protected AbstractBlock(){
         this.data = new byte[block_capacity];
+        this.buffer = ByteBuffer.wrap(this.data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // block backed by page, e.g. a slice of a MappedByteBuffer - the bytes are not copied
+    // page must hold at least block_capacity bytes from its position
+    protected AbstractBlock(ByteBuffer page){
+        ByteBuffer slice = page.slice();
+        slice.limit(block_capacity);
+        if(slice.hasArray() && slice.arrayOffset() == 0 && slice.array().length == block_capacity){
+            this.data = slice.array();
+        }
+        this.buffer = slice.order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public int get_block_capacity() {
         return block_capacity;
     }
 
+    // for mapped blocks this returns a copy, prefer the typed getters or get_view
     public byte[] get_data() {
+        if(data == null){
+            return get_data(0, block_capacity);
+        }
         return data;
     }
 
     public byte[] get_data(int offset, int length) {
-        if(offset + length > data.length){
+        if(offset + length > block_capacity){
             return null;
         }
         byte[] result = new byte[length];
-        System.arraycopy(data, offset, result, 0, length);
+        if(data != null){
+            System.arraycopy(data, offset, result, 0, length);
+        } else {
+            ByteBuffer src = buffer.duplicate();
+            src.position(offset);
+            src.get(result);
+        }
         return result;
     }
 
+    // read-only little endian view of the whole block, shares the bytes of the block
+    public ByteBuffer get_view() {
+        return buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // typed getters - values are little endian, as fields are written into records
+    public byte get_byte(int offset) {
+        return buffer.get(offset);
+    }
+
+    public short get_short(int offset) {
+        return buffer.getShort(offset);
+    }
+
+    public int get_int(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    public float get_float(int offset) {
+        return buffer.getFloat(offset);
+    }
+
+    public double get_double(int offset) {
+        return buffer.getDouble(offset);
+    }
+
     public void write_data(int offset, byte[] data_to_write){
-        if(offset + data_to_write.length > block_capacity){
+        write_data(offset, data_to_write, 0, data_to_write.length);
+    }
+
+    // writes length bytes of src from src_offset, so callers can pass a reused buffer without copying it first
+    public void write_data(int offset, byte[] src, int src_offset, int length){
+        if(offset + length > block_capacity){
             return;
         }
-        System.arraycopy(data_to_write, 0, data, offset, data_to_write.length);
+        if(data != null){
+            System.arraycopy(src, src_offset, data, offset, length);
+        } else {
+            ByteBuffer dst = buffer.duplicate();
+            dst.position(offset);
+            dst.put(src, src_offset, length);
+        }
+        dirty = true;
+        if(owner != null){
+            owner.block_written(this, offset, length);
+        }
         return;
     }
 }
@@ -1,43 +1,227 @@
 package storage;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 // Abstract File class - will be extended by LLD file and Tree
 public abstract class AbstractFile <T extends AbstractBlock> {
     
     protected List<T> blocks;
 
+    // set by DB.attach_log, every change to this file is logged to wal under file_id
+    int file_id = -1;
+    WriteAheadLog wal;
+
+    // held for reading while records are read and for writing while they are changed or moved, e.g. by vacuum
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
     public AbstractFile(List<T> blocks) {
         this.blocks = blocks;
+        for(int i = 0; i < blocks.size(); i++){
+            blocks.get(i).owner = this;
+            blocks.get(i).block_id = i;
+        }
     }
 
     public AbstractFile() {
         blocks = new ArrayList<>();
     }
 
+    // rebuilds a block of this file from its bytes on disk, page holds block_capacity bytes
+    // kind is the value block_kind returned for the block when it was written
+    protected abstract T load_block(ByteBuffer page, byte kind);
+
+    // files with more than one class of block override this, see load_block
+    protected byte block_kind(T block) {
+        return 0;
+    }
+
     public void add_block(T block) {
+        block.owner = this;
+        block.block_id = blocks.size();
         blocks.add(block);
+        if(wal != null){
+            wal.log_new_block(file_id, block, block_kind(block));
+        }
+    }
+
+    // replays a logged add_block - block_id may already exist if the snapshot holds it
+    void redo_block(int block_id, ByteBuffer page, byte kind) {
+        byte[] data = new byte[AbstractBlock.block_capacity];
+        page.get(data);
+        if(block_id == blocks.size()){
+            add_block(load_block(ByteBuffer.wrap(data), kind));
+        } else {
+            write_data(block_id, 0, data);
+        }
+    }
+
+    public ReentrantReadWriteLock get_lock() {
+        return lock;
+    }
+
+    public int get_num_blocks() {
+        return blocks.size();
+    }
+
+    byte get_kind(int block_id) {
+        if(blocks instanceof PagedBlockList){
+            return ((PagedBlockList<T>) blocks).get_kind(block_id);
+        }
+        return block_kind(blocks.get(block_id));
+    }
+
+    // moves the blocks of this file into a page file behind pool
+    // from here on only the pages resident in pool are kept in memory
+    void page_out(BufferPool pool) {
+        if(blocks instanceof PagedBlockList){
+            return;
+        }
+        PagedBlockList<T> paged = new PagedBlockList<>(this, pool);
+        for(T block : blocks){
+            paged.add(block);
+        }
+        blocks = paged;
+    }
+
+    boolean is_paged() {
+        return blocks instanceof PagedBlockList;
+    }
+
+    // writes every block of this file to page_file, block i becomes page i
+    public void write_pages(PageFile page_file) {
+        for(int i = 0; i < blocks.size(); i++){
+            T block = pin(i);
+            try {
+                if(i >= page_file.get_num_pages()){
+                    page_file.allocate_page();
+                }
+                page_file.write_page(i, block.get_data());
+            } finally {
+                unpin(i);
+            }
+        }
+    }
+
+    // replaces the blocks of this file with views of the pages in region, starting at its position
+    // no bytes are copied, the blocks read and write the mapped memory directly
+    void map_pages(ByteBuffer region, byte[] kinds) {
+        List<T> mapped = new ArrayList<>(kinds.length);
+        for(int i = 0; i < kinds.length; i++){
+            ByteBuffer page = region.duplicate();
+            page.position(region.position() + i * AbstractBlock.block_capacity);
+            T block = load_block(page, kinds[i]);
+            block.owner = this;
+            block.block_id = i;
+            mapped.add(block);
+        }
+        blocks = mapped;
+    }
+
+    // writes the file to page_file and switches it to a private memory mapping of that file
+    // later writes only change the mapped memory of this process, not page_file
+    public void map_pages(PageFile page_file) {
+        if(is_paged()){
+            throw new IllegalStateException("File is paged through a buffer pool and cannot be mapped");
+        }
+        byte[] kinds = new byte[blocks.size()];
+        for(int i = 0; i < kinds.length; i++){
+            kinds[i] = block_kind(blocks.get(i));
+        }
+        write_pages(page_file);
+        map_pages(page_file.map(0, kinds.length), kinds);
+    }
+
+    void flush() {
+        if(blocks instanceof PagedBlockList){
+            ((PagedBlockList<T>) blocks).flush();
+        }
+    }
+
+    void close() {
+        if(blocks instanceof PagedBlockList){
+            ((PagedBlockList<T>) blocks).close();
+        }
+    }
+
+    // called by AbstractBlock.write_data for every block of this file
+    void block_written(AbstractBlock block, int offset, int length) {
+        block_modified(block.block_id);
+        if(blocks instanceof PagedBlockList){
+            ((PagedBlockList<T>) blocks).written(block);
+        }
+        if(wal != null){
+            wal.log_write(file_id, block, offset, length);
+        }
+    }
+
+    // called after every write to block_id, files that keep something derived from their blocks override it
+    protected void block_modified(int block_id) {
+    }
+
+    // a pinned block stays in memory until it is unpinned
+    // every pin must be matched with exactly one unpin
+    public T pin(int block_id) {
+        if(blocks instanceof PagedBlockList){
+            return ((PagedBlockList<T>) blocks).pin(block_id);
+        }
+        return blocks.get(block_id);
+    }
+
+    public void unpin(int block_id) {
+        if(blocks instanceof PagedBlockList){
+            ((PagedBlockList<T>) blocks).unpin(block_id);
+        }
     }
 
     public byte[] get_data(int block_id){
         if(block_id >= blocks.size()){
             return null;
         }
-        return blocks.get(block_id).get_data();
+        T block = pin(block_id);
+        try {
+            return block.get_data();
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // read-only view of a block, see AbstractBlock.get_view
+    public ByteBuffer get_view(int block_id){
+        if(block_id >= blocks.size()){
+            return null;
+        }
+        T block = pin(block_id);
+        try {
+            return block.get_view();
+        } finally {
+            unpin(block_id);
+        }
     }
 
     public byte[] get_data(int block_id, int offset, int length){
         if(block_id >= blocks.size()){
             return null;
         }
-        return blocks.get(block_id).get_data(offset, length);
+        T block = pin(block_id);
+        try {
+            return block.get_data(offset, length);
+        } finally {
+            unpin(block_id);
+        }
     }
 
     public void write_data(int block_id, int offset, byte[] data){
         if(block_id >= blocks.size()){
             return;
         }
-        blocks.get(block_id).write_data(offset, data);
+        T block = pin(block_id);
+        try {
+            block.write_data(offset, data);
+        } finally {
+            unpin(block_id);
+        }
     }
 }
@@ -1,5 +1,7 @@
 package storage;
 
+import java.nio.ByteBuffer;
+
 // Similar to blocks of data on disk
 public class Block extends AbstractBlock{
     
@@ -10,5 +12,10 @@ public class Block extends AbstractBlock{
     public Block(){
         super();
     }
+
+    // view of a page held elsewhere, e.g. in a mapped file
+    public Block(ByteBuffer page){
+        super(page);
+    }
     
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package storage;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+/*
+    * A bounded pool of in-memory frames shared by all paged files of a DB.
+    * Each frame holds one page (block) of one file. When a page is needed and is not resident,
+    * a victim frame is chosen with the CLOCK policy: pinned frames are skipped, referenced frames
+    * get a second chance, and dirty victims are written back to their PageFile before reuse.
+ */
+public class BufferPool {
+
+    public static final int default_num_frames = 1024; // 4MB of pages
+
+    private static class Frame {
+        PagedBlockList<?> list;
+        int page_id;
+        AbstractBlock block;
+        int pin_count;
+        boolean referenced;
+    }
+
+    private final Path directory;
+    private final Frame[] frames;
+    private final HashMap<Long, Frame> page_table;
+    private int clock_hand;
+    private int next_list_id;
+
+    public BufferPool(int num_frames, Path directory) {
+        if(num_frames < 1){
+            throw new IllegalArgumentException("Buffer pool needs at least one frame");
+        }
+        this.directory = directory;
+        this.frames = new Frame[num_frames];
+        for(int i = 0; i < num_frames; i++){
+            frames[i] = new Frame();
+        }
+        this.page_table = new HashMap<>();
+    }
+
+    public BufferPool(int num_frames) {
+        this(num_frames, Paths.get(System.getProperty("java.io.tmpdir"), "db362"));
+    }
+
+    public BufferPool() {
+        this(default_num_frames);
+    }
+
+    public int get_num_frames() {
+        return frames.length;
+    }
+
+    synchronized int register_list() {
+        return next_list_id++;
+    }
+
+    PageFile create_page_file() {
+        return PageFile.create_temp(directory);
+    }
+
+    private static long key(PagedBlockList<?> list, int page_id) {
+        return ((long) list.list_id << 32) | (page_id & 0xFFFFFFFFL);
+    }
+
+    // returns the block for page_id, reading it from disk if it is not resident
+    synchronized AbstractBlock fetch(PagedBlockList<?> list, int page_id) {
+        Frame frame = page_table.get(key(list, page_id));
+        if(frame != null){
+            frame.referenced = true;
+            return frame.block;
+        }
+
+        // a caller may still hold the block object from before it was evicted,
+        // hand out that same object so that nobody ends up with two copies of one page
+        AbstractBlock block = list.revive(page_id);
+        if(block == null){
+            block = list.read(page_id);
+        }
+        install(list, page_id, block);
+        return block;
+    }
+
+    // places a block that is not resident yet into a frame
+    synchronized void install(PagedBlockList<?> list, int page_id, AbstractBlock block) {
+        Frame frame = victim();
+        frame.list = list;
+        frame.page_id = page_id;
+        frame.block = block;
+        frame.pin_count = 0;
+        frame.referenced = true;
+        page_table.put(key(list, page_id), frame);
+    }
+
+    synchronized AbstractBlock pin(PagedBlockList<?> list, int page_id) {
+        AbstractBlock block = fetch(list, page_id);
+        page_table.get(key(list, page_id)).pin_count++;
+        return block;
+    }
+
+    synchronized void unpin(PagedBlockList<?> list, int page_id) {
+        Frame frame = page_table.get(key(list, page_id));
+        if(frame == null || frame.pin_count == 0){
+            throw new IllegalStateException("Page " + page_id + " is not pinned");
+        }
+        frame.pin_count--;
+    }
+
+    synchronized boolean is_resident(PagedBlockList<?> list, int page_id, AbstractBlock block) {
+        Frame frame = page_table.get(key(list, page_id));
+        return frame != null && frame.block == block;
+    }
+
+    // writes back every dirty resident page of list, or of all lists if list is null
+    synchronized void flush(PagedBlockList<?> list) {
+        for(Frame frame : frames){
+            if(frame.block != null && frame.block.dirty && (list == null || frame.list == list)){
+                frame.list.write(frame.page_id, frame.block);
+            }
+        }
+    }
+
+    public synchronized void flush_all() {
+        flush(null);
+    }
+
+    // drops every frame of list, used when its file is closed
+    synchronized void discard(PagedBlockList<?> list) {
+        for(Frame frame : frames){
+            if(frame.list == list){
+                page_table.remove(key(list, frame.page_id));
+                frame.list = null;
+                frame.block = null;
+                frame.pin_count = 0;
+                frame.referenced = false;
+            }
+        }
+    }
+
+    // CLOCK sweep, two full turns are enough to clear every reference bit once
+    private Frame victim() {
+        for(int step = 0; step < 2 * frames.length; step++){
+            Frame frame = frames[clock_hand];
+            clock_hand = (clock_hand + 1) % frames.length;
+
+            if(frame.block == null){
+                return frame;
+            }
+            if(frame.pin_count > 0){
+                continue;
+            }
+            if(frame.referenced){
+                frame.referenced = false;
+                continue;
+            }
+
+            if(frame.block.dirty){
+                frame.list.write(frame.page_id, frame.block);
+            }
+            frame.list.bury(frame.page_id, frame.block);
+            page_table.remove(key(frame.list, frame.page_id));
+            frame.list = null;
+            frame.block = null;
+            return frame;
+        }
+        throw new IllegalStateException("Buffer pool exhausted: all " + frames.length + " frames are pinned");
+    }
+}
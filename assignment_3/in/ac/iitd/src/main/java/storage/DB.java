@@ -1,9 +1,14 @@
 package storage;
 
 import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /*
     * A DB is simply a collection of files.
@@ -14,15 +19,92 @@ public class DB {
     // This is private :)
     private List<AbstractFile<? extends AbstractBlock>> files;
 
+    // null if all files are kept in memory
+    private BufferPool pool;
+
+    // null if changes are not logged
+    private WriteAheadLog wal;
+
     public DB() {
-        files = new ArrayList<>();
+        // files are looked up while others are added, e.g. by a lazily loaded table
+        files = new CopyOnWriteArrayList<>();
+    }
+
+    // files added to this DB are kept on disk, with only the pages held by pool in memory
+    public DB(BufferPool pool) {
+        this();
+        this.pool = pool;
     }
 
-    public int addFile(AbstractFile<? extends AbstractBlock> file) {
+    public synchronized int addFile(AbstractFile<? extends AbstractBlock> file) {
 
+        if(pool != null){
+            file.page_out(pool);
+        }
         files.add(file);
-        return files.size() - 1;
+        int file_id = files.size() - 1;
+        if(wal != null){
+            log_file(file_id, file);
+        }
+        return file_id;
+
+    }
+
+    // from here on every change to the files of this DB is logged to wal
+    // wal should already have been replayed into this DB, see WriteAheadLog.replay
+    public void attach_log(WriteAheadLog wal) {
+        this.wal = wal;
+        for(int i = 0; i < files.size(); i++){
+            files.get(i).file_id = i;
+            files.get(i).wal = wal;
+        }
+    }
+
+    public WriteAheadLog get_log() {
+        return wal;
+    }
+
+    private <T extends AbstractBlock> void log_file(int file_id, AbstractFile<T> file) {
+        wal.log_new_file(file_id, Snapshot.file_type(file), Snapshot.key_type(file));
+        file.file_id = file_id;
+        file.wal = wal;
+        for(int i = 0; i < file.get_num_blocks(); i++){
+            T block = file.pin(i);
+            try {
+                wal.log_new_block(file_id, block, file.block_kind(block));
+            } finally {
+                file.unpin(i);
+            }
+        }
+    }
 
+    int get_num_files() {
+        return files.size();
+    }
+
+    AbstractFile<? extends AbstractBlock> get_file(int file_id) {
+        return files.get(file_id);
+    }
+
+    public BufferPool get_buffer_pool() {
+        return pool;
+    }
+
+    // writes back all dirty pages of paged files
+    public void flush() {
+        if(pool != null){
+            pool.flush_all();
+        }
+    }
+
+    // releases the page files of all paged files, the DB must not be used afterwards
+    public void close() {
+        if(wal != null){
+            wal.close();
+        }
+        for(AbstractFile<? extends AbstractBlock> file : files){
+            file.close();
+        }
     }
     
     public byte[] get_data(int file_id, int block_id, int offset, int length){
@@ -39,6 +121,66 @@ public class DB {
         return files.get(file_id).get_data(block_id);
     }
 
+    // read-only view of a block, no bytes are copied
+    public ByteBuffer get_view(int file_id, int block_id){
+        if(file_id >= files.size()){
+            return null;
+        }
+        return files.get(file_id).get_view(block_id);
+    }
+
+    // typed getters for single values, little endian like the fields of a record
+    // they do not allocate - prefer get_view when reading many values of one block
+    public int get_int(int file_id, int block_id, int offset){
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        AbstractBlock block = file.pin(block_id);
+        try {
+            return block.get_int(offset);
+        } finally {
+            file.unpin(block_id);
+        }
+    }
+
+    public short get_short(int file_id, int block_id, int offset){
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        AbstractBlock block = file.pin(block_id);
+        try {
+            return block.get_short(offset);
+        } finally {
+            file.unpin(block_id);
+        }
+    }
+
+    public double get_double(int file_id, int block_id, int offset){
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        AbstractBlock block = file.pin(block_id);
+        try {
+            return block.get_double(offset);
+        } finally {
+            file.unpin(block_id);
+        }
+    }
+
+    // see AbstractFile.get_lock
+    public ReentrantReadWriteLock get_lock(int file_id){
+        return files.get(file_id).get_lock();
+    }
+
+    public int get_num_blocks(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        return files.get(file_id).get_num_blocks();
+    }
+
+    // moves an in-memory file onto a private memory mapping of a page file at path
+    // its blocks stop using heap memory, see AbstractFile.map_pages
+    public void map_file(int file_id, Path path){
+        PageFile page_file = new PageFile(path);
+        files.get(file_id).map_pages(page_file);
+        page_file.close();
+    }
+
     // only applicable for relational files
     public int get_num_records(int file_id){
         if(file_id >= files.size()){
@@ -51,6 +193,33 @@ public class DB {
         return -1;
     }
 
+    // only applicable for relational files
+    // returns the RID of the record, see File.insert_record
+    public long insert_record(int file_id, byte[] record){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).insert_record(record);
+        }
+        return -1;
+    }
+
+    // only applicable for index tree file
+    @SuppressWarnings("unchecked")
+    public <T> boolean insert_index(int file_id, T key, long rid){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            ((BPlusTreeIndexFile<T>) file).insert(key, RecordId.block_id(rid), RecordId.slot(rid));
+            return true;
+        }
+        return false;
+    }
+
     // only applicable for index tree file
     // returns the block id of leaf node where the key is present
     public <T> int search_index(int file_id, T key){
@@ -64,6 +233,35 @@ public class DB {
         return -1;
     }
 
+    // only applicable for index tree file
+    // returns the RID of the first record with key, see RecordId
+    @SuppressWarnings("unchecked")
+    public <T> long search_index_rid(int file_id, T key){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).searchRid(key);
+        }
+        return -1;
+    }
+
+    // only applicable for index tree file
+    // entries with keys between lower and upper in key order, see BPlusTreeIndexFile.scan
+    // returns null if file_id is not an index
+    @SuppressWarnings("unchecked")
+    public <T> IndexCursor<T> scan_index(int file_id, T lower, boolean lower_inclusive, T upper, boolean upper_inclusive){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).scan(lower, lower_inclusive, upper, upper_inclusive);
+        }
+        return null;
+    }
+
     public void write_data(int file_id, int block_id, int offset, byte[] data){
         if(file_id >= files.size()){
             return;
@@ -83,6 +281,53 @@ public class DB {
         return false;
     }
 
+    // removes the entry of key for the record rid
+    @SuppressWarnings("unchecked")
+    public <T> boolean delete_from_index(int file_id, T key, long rid){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).delete(key, rid);
+        }
+        return false;
+    }
+
+    // points the entry of key for the record old_rid at new_rid, used when records are moved
+    @SuppressWarnings("unchecked")
+    public <T> boolean update_index(int file_id, T key, long old_rid, long new_rid){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).update(key, old_rid, new_rid);
+        }
+        return false;
+    }
+
+    // only applicable for relational files
+    public boolean delete_record(int file_id, int block_id, int slot){
+        if(file_id >= files.size()){
+            return false;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).delete_record(block_id, slot);
+        }
+        return false;
+    }
+
+    // relational file file_id, or null if it is an index
+    public File get_relational_file(int file_id){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        return file instanceof File ? (File) file : null;
+    }
+
     public <T> ArrayList<T> return_bfs_index(int file_id){
         if(file_id >= files.size()){
             return null;
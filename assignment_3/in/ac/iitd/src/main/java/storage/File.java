@@ -1,65 +1,352 @@
 package storage;
 
+import java.nio.ByteBuffer;
+
 /*
     * A File is simply a collection of blocks
     * The 0th block in the file is always the metadata block (contains schema)
     * For structure of schema block and data block, follow the assignment doc
+    *
+    * A record is deleted by setting the top bit (DEAD_SLOT) of its entry in the record directory.
+    * Its slot and offset stay, so slots of other records keep their numbers and the length of a
+    * record is still the distance to the offset of the slot before it. compact_block gives the
+    * space of deleted records back.
  */
 
 public class File extends AbstractFile<Block> {
 
+    @Override
+    protected Block load_block(ByteBuffer page, byte kind) {
+        return new Block(page);
+    }
+
+    // null until it is first needed, see free_space_map
+    private FreeSpaceMap fsm;
+
+    public static final int DEAD_SLOT = 0x8000;
+
     public boolean add_record_to_last_block(byte[] bytes){
+        return add_record_to_last_block(bytes, bytes.length);
+    }
+
+    // adds the first length bytes of bytes as a record, see RecordEncoder
+    public boolean add_record_to_last_block(byte[] bytes, int length){
 
         // if file has only one block - the metadata block, return false
         if(blocks.size() == 1){
             return false;
         }
 
-        Block lastBlock = blocks.get(blocks.size() - 1);
+        return add_record_to_block(blocks.size() - 1, bytes, length) != -1;
+    }
+
+    // number of bytes between the record directory and the records of a data block
+    public int get_free_bytes(int block_id){
+        Block block = pin(block_id);
+        try {
+            return free_bytes(block);
+        } finally {
+            unpin(block_id);
+        }
+    }
 
+    private static int free_bytes(Block block){
         // first 2 bytes in this block are the number of records in the block
-        byte[] numRecordsBytes = lastBlock.get_data(0, 2);
-        int numRecords = (numRecordsBytes[0] << 8) | (numRecordsBytes[1] & 0xFF);
+        int numRecords = ((block.get_byte(0) & 0xFF) << 8) | (block.get_byte(1) & 0xFF);
+
+        // records are written back to front, so the last record has the lowest offset
+        int offset = block.get_block_capacity();
+        if(numRecords > 0){
+            offset = get_slot(block, numRecords - 1) & ~DEAD_SLOT;
+        }
+
+        int usedBytes = 2 + 2 * numRecords + (block.get_block_capacity() - offset);
+        return block.get_block_capacity() - usedBytes;
+    }
 
-        // read the offset of the last record in the block
-        byte[] offsetBytes = lastBlock.get_data(2 + (numRecords - 1) * 2, 2);
-        int offset = (offsetBytes[0] << 8) | (offsetBytes[1] & 0xFF);
+    // entry of slot in the record directory, offset of the record plus the DEAD_SLOT bit
+    private static int get_slot(Block block, int slot){
+        return ((block.get_byte(2 + 2 * slot) & 0xFF) << 8) | (block.get_byte(3 + 2 * slot) & 0xFF);
+    }
+
+    private static int get_num_slots(Block block){
+        return ((block.get_byte(0) & 0xFF) << 8) | (block.get_byte(1) & 0xFF);
+    }
 
-        int usedBytes = 2 + 2 * numRecords + (lastBlock.get_block_capacity() - offset);
-        // calculate length of free bytes in the block
-        int freeBytes = lastBlock.get_block_capacity() - usedBytes;
+    // number of slots in the record directory of a data block, deleted records included
+    public int get_num_slots(int block_id){
+        Block block = pin(block_id);
+        try {
+            return get_num_slots(block);
+        } finally {
+            unpin(block_id);
+        }
+    }
 
-        // if the record is larger than the free bytes in the block, return false
-        if(bytes.length + 2 > freeBytes){
+    public boolean is_deleted(int block_id, int slot){
+        Block block = pin(block_id);
+        try {
+            return (get_slot(block, slot) & DEAD_SLOT) != 0;
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // bytes of the record in slot, null if there is no such slot or the record was deleted
+    public byte[] get_record(int block_id, int slot){
+        if(block_id <= 0 || block_id >= blocks.size()){
+            return null;
+        }
+        Block block = pin(block_id);
+        try {
+            if(slot < 0 || slot >= get_num_slots(block)){
+                return null;
+            }
+            int entry = get_slot(block, slot);
+            if((entry & DEAD_SLOT) != 0){
+                return null;
+            }
+            int end = slot == 0 ? block.get_block_capacity() : get_slot(block, slot - 1) & ~DEAD_SLOT;
+            return block.get_data(entry, end - entry);
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // marks the record in slot as deleted, its space is reclaimed by compact_block
+    public boolean delete_record(int block_id, int slot){
+        if(block_id <= 0 || block_id >= blocks.size()){
             return false;
         }
+        Block block = pin(block_id);
+        try {
+            if(slot < 0 || slot >= get_num_slots(block)){
+                return false;
+            }
+            int entry = get_slot(block, slot);
+            if((entry & DEAD_SLOT) != 0){
+                return false;
+            }
+            entry |= DEAD_SLOT;
+            block.write_data(2 + 2 * slot, new byte[]{ (byte) (entry >> 8), (byte) entry });
+            if(fsm != null){
+                fsm.set(block_id, free_bytes(block));
+            }
+            return true;
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // bytes taken by the live records of a block, their slots and the block header
+    public int get_used_bytes(int block_id){
+        Block block = pin(block_id);
+        try {
+            int numSlots = get_num_slots(block);
+            int used = 2;
+            int end = block.get_block_capacity();
+            for(int i = 0; i < numSlots; i++){
+                int entry = get_slot(block, i);
+                int offset = entry & ~DEAD_SLOT;
+                if((entry & DEAD_SLOT) == 0){
+                    used += 2 + end - offset;
+                }
+                end = offset;
+            }
+            return used;
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // true if the live records of a block take at most half of it
+    public boolean is_sparse(int block_id){
+        return 2 * get_used_bytes(block_id) <= AbstractBlock.block_capacity;
+    }
+
+    // true if the block holds deleted records, see compact_block
+    public boolean has_dead_space(int block_id){
+        Block block = pin(block_id);
+        try {
+            int numSlots = get_num_slots(block);
+            for(int i = 0; i < numSlots; i++){
+                if((get_slot(block, i) & DEAD_SLOT) != 0){
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // packs the live records of a block against its end, in place
+    // live records keep their slots, deleted ones shrink to 0 bytes and trailing deleted slots are dropped
+    public void compact_block(int block_id){
+        Block block = pin(block_id);
+        try {
+            int capacity = block.get_block_capacity();
+            int numSlots = get_num_slots(block);
+            byte[] image = new byte[capacity];
+
+            int heap = capacity;
+            int end = capacity;
+            int lastLive = -1;
+            for(int i = 0; i < numSlots; i++){
+                int entry = get_slot(block, i);
+                int offset = entry & ~DEAD_SLOT;
+                int newEntry = heap | DEAD_SLOT;
+                if((entry & DEAD_SLOT) == 0){
+                    int length = end - offset;
+                    heap -= length;
+                    for(int j = 0; j < length; j++){
+                        image[heap + j] = block.get_byte(offset + j);
+                    }
+                    newEntry = heap;
+                    lastLive = i;
+                }
+                image[2 + 2 * i] = (byte) (newEntry >> 8);
+                image[3 + 2 * i] = (byte) newEntry;
+                end = offset;
+            }
+
+            numSlots = lastLive + 1;
+            image[0] = (byte) (numSlots >> 8);
+            image[1] = (byte) numSlots;
+
+            // a single write, so the whole new image is logged at once
+            block.write_data(0, image);
+            if(fsm != null){
+                fsm.set(block_id, free_bytes(block));
+            }
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // moves every live record of block from to the end of block to, leaving from empty
+    // returns the new slot of each slot of from (-1 for deleted ones), null if they do not all fit
+    public int[] move_records(int from, int to){
+        if(get_used_bytes(from) - 2 > get_free_bytes(to)){
+            return null;
+        }
+        int numSlots = get_num_slots(from);
+        int[] moved = new int[numSlots];
+        for(int i = 0; i < numSlots; i++){
+            byte[] record = get_record(from, i);
+            moved[i] = record == null ? -1 : add_record_to_block(to, record, record.length);
+        }
+        write_data(from, 0, new byte[]{ 0, 0 });
+        if(fsm != null){
+            fsm.set(from, get_free_bytes(from));
+        }
+        return moved;
+    }
+
+    // returns the slot of the record, -1 if it does not fit
+    private int add_record_to_block(int block_id, byte[] bytes, int length){
+
+        Block block = pin(block_id);
+        try {
+            int slot = append_record(block, bytes, length);
+            if(fsm != null){
+                fsm.set(block_id, free_bytes(block));
+            }
+            return slot;
+        } finally {
+            unpin(block_id);
+        }
+    }
+
+    // adds the first length bytes of bytes as a record to a data block, which need not belong to a file yet
+    // returns the slot of the record, -1 if it does not fit
+    public static int append_record(Block block, byte[] bytes, int length){
+        int freeBytes = free_bytes(block);
+
+        // if the record is larger than the free bytes in the block, return -1
+        if(length + 2 > freeBytes){
+            return -1;
+        }
+
+        int numRecords = ((block.get_byte(0) & 0xFF) << 8) | (block.get_byte(1) & 0xFF);
+        // the heap ends right after the free bytes
+        int offset = 2 + 2 * numRecords + freeBytes;
 
         // add the record to the block
-        int new_offset = offset - bytes.length;
+        int new_offset = offset - length;
 
         // convert the new offset to 2 bytes
         byte[] new_offset_bytes = new byte[2];
         new_offset_bytes[0] = (byte) (new_offset >> 8);
         new_offset_bytes[1] = (byte) new_offset;
-        lastBlock.write_data(2 + 2 * numRecords, new_offset_bytes);
-        lastBlock.write_data(new_offset, bytes);
+        block.write_data(2 + 2 * numRecords, new_offset_bytes);
+        block.write_data(new_offset, bytes, 0, length);
 
         numRecords++;
         byte[] new_num_records_bytes = new byte[2];
         new_num_records_bytes[0] = (byte) (numRecords >> 8);
         new_num_records_bytes[1] = (byte) numRecords;
-        lastBlock.write_data(0, new_num_records_bytes);
+        block.write_data(0, new_num_records_bytes);
 
-        return true;
+        return numRecords - 1;
+    }
+
+    // free space map of the data blocks, built from the blocks on first use
+    private FreeSpaceMap free_space_map(){
+        if(fsm == null){
+            FreeSpaceMap map = new FreeSpaceMap();
+            map.set(0, 0); // schema block
+            for(int i = 1; i < blocks.size(); i++){
+                map.set(i, get_free_bytes(i));
+            }
+            fsm = map;
+        }
+        return fsm;
+    }
+
+    // puts a record into any block with room for it, so space freed in earlier blocks is reused
+    // returns the RID of the record, -1 if it does not fit into an empty block
+    public long insert_record(byte[] bytes){
+
+        if(blocks.isEmpty()){
+            return -1;
+        } // sanity check
+
+        FreeSpaceMap map = free_space_map();
+
+        // fill classes are coarse, a block may be passed over although the record would fit
+        int block_id;
+        while((block_id = map.find(bytes.length + 2)) != -1){
+            int slot = add_record_to_block(block_id, bytes, bytes.length);
+            if(slot != -1){
+                return RecordId.make(block_id, slot);
+            }
+        }
+
+        // the last block is filled exactly, like add_record_to_last_block does while loading
+        if(blocks.size() > 1){
+            int slot = add_record_to_block(blocks.size() - 1, bytes, bytes.length);
+            if(slot != -1){
+                return RecordId.make(blocks.size() - 1, slot);
+            }
+        }
+        if(add_record_to_new_block(bytes)){
+            return RecordId.make(blocks.size() - 1, 0);
+        }
+        return -1;
     }
 
     public boolean add_record_to_new_block(byte[] bytes){
-        
+        return add_record_to_new_block(bytes, bytes.length);
+    }
+
+    public boolean add_record_to_new_block(byte[] bytes, int length){
+
         if(blocks.isEmpty()){
             return false;
         } // sanity check
 
-        if(bytes.length + 4 > blocks.get(0).get_block_capacity()){
+        if(length + 4 > blocks.get(0).get_block_capacity()){
             return false;
         } // sanity check
 
@@ -72,14 +359,17 @@ public class File extends AbstractFile<Block> {
         numRecordsBytes[1] = 1;
         newBlock.write_data(0, numRecordsBytes);
 
-        int offset = newBlock.get_block_capacity() - bytes.length;
+        int offset = newBlock.get_block_capacity() - length;
         // convert the offset to 2 bytes
         byte[] offsetBytes = new byte[2];
         offsetBytes[0] = (byte) (offset >> 8);
         offsetBytes[1] = (byte) offset;
         newBlock.write_data(2, offsetBytes);
-        newBlock.write_data(offset, bytes);
-        blocks.add(newBlock);
+        newBlock.write_data(offset, bytes, 0, length);
+        add_block(newBlock);
+        if(fsm != null){
+            fsm.set(blocks.size() - 1, offset - 4);
+        }
         return true;
     }
 
@@ -89,8 +379,17 @@ public class File extends AbstractFile<Block> {
         }
         int numRecords = 0;
         for(int i = 1; i < blocks.size(); i++){
-            byte[] numRecordsBytes = blocks.get(i).get_data(0, 2);
-            numRecords += (numRecordsBytes[0] << 8) | (numRecordsBytes[1] & 0xFF);
+            Block block = pin(i);
+            try {
+                int numSlots = get_num_slots(block);
+                for(int j = 0; j < numSlots; j++){
+                    if((get_slot(block, j) & DEAD_SLOT) == 0){
+                        numRecords++;
+                    }
+                }
+            } finally {
+                unpin(i);
+            }
         }
         return numRecords;
     }
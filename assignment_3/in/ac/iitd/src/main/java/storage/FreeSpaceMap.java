@@ -0,0 +1,82 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    * Free space map of a relational File - one byte per block holding its fill class,
+    * the number of whole class_size steps of free space in the block.
+    * The bytes live in dedicated FSM pages of block_capacity bytes each,
+    * page p covers blocks p * entries_per_page ... (p + 1) * entries_per_page - 1.
+    *
+    * FSM pages are not blocks of the file, so block ids and scans are unchanged.
+    * The map is only a hint - it is rebuilt from the blocks whenever a file is opened,
+    * and a block is always checked before a record is put into it.
+ */
+class FreeSpaceMap {
+
+    // 16 bytes, the 256 classes of one byte cover a whole block
+    static final int class_size = AbstractBlock.block_capacity / 256;
+    static final int entries_per_page = AbstractBlock.block_capacity;
+
+    private final List<Block> pages;
+    private int size;
+
+    // no block before this one has a fill class above 0
+    private int first_free;
+
+    FreeSpaceMap() {
+        pages = new ArrayList<>();
+        first_free = Integer.MAX_VALUE;
+    }
+
+    static int fill_class(int free_bytes) {
+        return Math.min(255, Math.max(0, free_bytes) / class_size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int block_id) {
+        if(block_id >= size){
+            return 0;
+        }
+        return pages.get(block_id / entries_per_page).get_byte(block_id % entries_per_page) & 0xFF;
+    }
+
+    void set(int block_id, int free_bytes) {
+        while(block_id >= pages.size() * entries_per_page){
+            pages.add(new Block());
+        }
+        size = Math.max(size, block_id + 1);
+        int fill_class = fill_class(free_bytes);
+        pages.get(block_id / entries_per_page).write_data(block_id % entries_per_page, new byte[]{ (byte) fill_class });
+        if(fill_class > 0 && block_id < first_free){
+            first_free = block_id;
+        }
+    }
+
+    // returns a block whose fill class guarantees at least needed free bytes, -1 if there is none
+    int find(int needed) {
+        int min_class = (needed + class_size - 1) / class_size;
+        if(min_class == 0){
+            min_class = 1;
+        }
+        boolean all_full = true;
+        for(int block_id = Math.min(first_free, size); block_id < size; block_id++){
+            int fill_class = get(block_id);
+            if(fill_class >= min_class){
+                return block_id;
+            }
+            if(all_full && fill_class > 0){
+                first_free = block_id;
+                all_full = false;
+            }
+        }
+        if(all_full){
+            first_free = Integer.MAX_VALUE;
+        }
+        return -1;
+    }
+}
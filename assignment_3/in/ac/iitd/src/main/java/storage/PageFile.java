@@ -0,0 +1,113 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    * A PageFile is a file on disk made of fixed size pages.
+    * Page i lives at byte offset i * page_size, so a page id is all that is needed to find it.
+    * Each AbstractFile that is paged through the BufferPool owns exactly one PageFile.
+ */
+public class PageFile {
+
+    public static final int page_size = AbstractBlock.block_capacity;
+
+    private final Path path;
+    private final FileChannel channel;
+    private int num_pages;
+
+    public PageFile(Path path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.num_pages = (int) (channel.size() / page_size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // creates an empty page file in directory, deleted when the JVM exits
+    public static PageFile create_temp(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path path = Files.createTempFile(directory, "db362_", ".pages");
+            path.toFile().deleteOnExit();
+            return new PageFile(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Path get_path() {
+        return path;
+    }
+
+    public int get_num_pages() {
+        return num_pages;
+    }
+
+    // reserves the next page id, the page is zero filled until it is first written
+    public int allocate_page() {
+        return num_pages++;
+    }
+
+    public void read_page(int page_id, byte[] dst) {
+        if(page_id >= num_pages){
+            throw new IllegalArgumentException("Page " + page_id + " does not exist in " + path);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(dst, 0, page_size);
+        long position = (long) page_id * page_size;
+        try {
+            while(buffer.hasRemaining()){
+                int read = channel.read(buffer, position + buffer.position());
+                if(read < 0){
+                    // allocated but never written, rest of the page is zeroes
+                    while(buffer.hasRemaining()){
+                        buffer.put((byte) 0);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write_page(int page_id, byte[] src) {
+        if(page_id >= num_pages){
+            throw new IllegalArgumentException("Page " + page_id + " does not exist in " + path);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(src, 0, page_size);
+        long position = (long) page_id * page_size;
+        try {
+            while(buffer.hasRemaining()){
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // maps num_pages pages starting at first_page copy-on-write
+    // writes through the mapping stay private to this process and never reach the file
+    public MappedByteBuffer map(int first_page, int num_pages) {
+        try {
+            return channel.map(FileChannel.MapMode.PRIVATE, (long) first_page * page_size, (long) num_pages * page_size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
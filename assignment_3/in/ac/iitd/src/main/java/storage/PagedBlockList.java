@@ -0,0 +1,152 @@
+package storage;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+    * Block list of a paged file - blocks live in a PageFile on disk and only
+    * the pages currently held by the BufferPool are in memory.
+    * Page i of the PageFile is block i of the file.
+    *
+    * A block object handed out earlier may outlive its frame. Such a block is remembered weakly,
+    * writes to it go straight to disk, and it is handed out again if its page is fetched.
+ */
+class PagedBlockList<T extends AbstractBlock> extends AbstractList<T> {
+
+    private static class Ghost extends WeakReference<AbstractBlock> {
+        final int page_id;
+
+        Ghost(int page_id, AbstractBlock block, ReferenceQueue<AbstractBlock> queue) {
+            super(block, queue);
+            this.page_id = page_id;
+        }
+    }
+
+    final int list_id;
+    private final AbstractFile<T> file;
+    private final BufferPool pool;
+    private final PageFile pages;
+
+    // kind of every block, needed to rebuild the right block class from its bytes
+    private byte[] kinds;
+    private int size;
+
+    private final HashMap<Integer, Ghost> ghosts;
+    private final ReferenceQueue<AbstractBlock> collected;
+
+    PagedBlockList(AbstractFile<T> file, BufferPool pool) {
+        this.file = file;
+        this.pool = pool;
+        this.list_id = pool.register_list();
+        this.pages = pool.create_page_file();
+        this.kinds = new byte[16];
+        this.ghosts = new HashMap<>();
+        this.collected = new ReferenceQueue<>();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Block " + index + " out of " + size);
+        }
+        return (T) pool.fetch(this, index);
+    }
+
+    @Override
+    public boolean add(T block) {
+        synchronized (pool) {
+            int page_id = pages.allocate_page();
+            if(page_id == kinds.length){
+                kinds = Arrays.copyOf(kinds, 2 * kinds.length);
+            }
+            kinds[page_id] = file.block_kind(block);
+            size = page_id + 1;
+
+            block.owner = file;
+            block.block_id = page_id;
+            block.dirty = true;
+            pool.install(this, page_id, block);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    T pin(int index) {
+        return (T) pool.pin(this, index);
+    }
+
+    void unpin(int index) {
+        pool.unpin(this, index);
+    }
+
+    byte get_kind(int page_id) {
+        return kinds[page_id];
+    }
+
+    // called on every write_data to a block of this list
+    void written(AbstractBlock block) {
+        synchronized (pool) {
+            if(!pool.is_resident(this, block.block_id, block)){
+                write(block.block_id, block);
+            }
+        }
+    }
+
+    T read(int page_id) {
+        byte[] data = new byte[PageFile.page_size];
+        pages.read_page(page_id, data);
+        T block = file.load_block(ByteBuffer.wrap(data), kinds[page_id]);
+        block.owner = file;
+        block.block_id = page_id;
+        block.dirty = false;
+        return block;
+    }
+
+    void write(int page_id, AbstractBlock block) {
+        pages.write_page(page_id, block.get_data());
+        block.dirty = false;
+    }
+
+    // remembers an evicted block in case a caller still holds it
+    void bury(int page_id, AbstractBlock block) {
+        expunge();
+        ghosts.put(page_id, new Ghost(page_id, block, collected));
+    }
+
+    AbstractBlock revive(int page_id) {
+        expunge();
+        Ghost ghost = ghosts.remove(page_id);
+        return ghost == null ? null : ghost.get();
+    }
+
+    private void expunge() {
+        Reference<? extends AbstractBlock> ref;
+        while((ref = collected.poll()) != null){
+            Ghost ghost = (Ghost) ref;
+            if(ghosts.get(ghost.page_id) == ghost){
+                ghosts.remove(ghost.page_id);
+            }
+        }
+    }
+
+    void flush() {
+        pool.flush(this);
+    }
+
+    void close() {
+        pool.discard(this);
+        pages.close();
+        pages.get_path().toFile().delete();
+    }
+}
@@ -0,0 +1,26 @@
+package storage;
+
+/*
+    * A record id (RID) names one record of a relational File - block id | slot in the record directory of the block.
+    * RIDs are packed into a long so they can be passed around without allocating, -1 is no record.
+ */
+public final class RecordId {
+
+    // slot of an index entry written without one, the whole block has to be searched for the record
+    public static final int NO_SLOT = 0xFFFF;
+
+    private RecordId() {
+    }
+
+    public static long make(int block_id, int slot) {
+        return ((long) block_id << 16) | (slot & 0xFFFF);
+    }
+
+    public static int block_id(long rid) {
+        return (int) (rid >>> 16);
+    }
+
+    public static int slot(long rid) {
+        return (int) (rid & 0xFFFF);
+    }
+}
@@ -0,0 +1,206 @@
+package storage;
+
+import index.bplusTree.BPlusTreeIndexFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    * A Snapshot is a single image file holding every page of every file of a DB, plus the catalog
+    * that maps table and index names to file ids.
+    *
+    * Layout - header | pages of file 0 | pages of file 1 | ...
+    * header = magic | version | # files | file entries | # catalog entries | catalog entries, padded to whole pages
+    * file entry = file type | key type (index files only) | first page | # blocks | kind of each block
+    * catalog entry = len(name) | name | file id
+    *
+    * Opening a snapshot maps the pages of each file copy-on-write, nothing is parsed or copied
+    * until a block is read. Writes after opening stay in memory and do not change the image.
+ */
+public class Snapshot {
+
+    private static final byte[] MAGIC = "DB362SNP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final byte RELATIONAL_FILE = 0;
+    private static final byte INDEX_FILE = 1;
+
+    // key types of index files, same order as StorageManager.ColumnType
+    private static final Class<?>[] KEY_TYPES = { String.class, Integer.class, Boolean.class, Float.class, Double.class };
+
+    private static final int page_size = PageFile.page_size;
+
+    private final DB db;
+    private final HashMap<String, Integer> catalog;
+
+    private Snapshot(DB db, HashMap<String, Integer> catalog) {
+        this.db = db;
+        this.catalog = catalog;
+    }
+
+    public DB get_db() {
+        return db;
+    }
+
+    public HashMap<String, Integer> get_catalog() {
+        return catalog;
+    }
+
+    // writes db and catalog to path, replacing it atomically once the image is complete
+    // pages are copied as they are, the caller keeps writers out, see StorageManager.checkpoint
+    public static void write(DB db, Map<String, Integer> catalog, Path path) {
+        try {
+            int num_files = db.get_num_files();
+            ByteArrayOutputStream header_bytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(header_bytes);
+
+            header.write(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(num_files);
+
+            // the first page of each file depends on the size of the header, so size it first
+            int header_size = MAGIC.length + 8;
+            for(int i = 0; i < num_files; i++){
+                header_size += 1 + 1 + 4 + 4 + db.get_file(i).get_num_blocks();
+            }
+            header_size += 4;
+            for(String name : catalog.keySet()){
+                header_size += 2 + name.getBytes(StandardCharsets.UTF_8).length + 4;
+            }
+            int header_pages = (header_size + page_size - 1) / page_size;
+
+            int next_page = header_pages;
+            for(int i = 0; i < num_files; i++){
+                AbstractFile<? extends AbstractBlock> file = db.get_file(i);
+                int num_blocks = file.get_num_blocks();
+                header.writeByte(file_type(file));
+                header.writeByte(key_type(file));
+                header.writeInt(next_page);
+                header.writeInt(num_blocks);
+                for(int b = 0; b < num_blocks; b++){
+                    header.writeByte(file.get_kind(b));
+                }
+                next_page += num_blocks;
+            }
+
+            header.writeInt(catalog.size());
+            for(Map.Entry<String, Integer> entry : catalog.entrySet()){
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                header.writeShort(name.length);
+                header.write(name);
+                header.writeInt(entry.getValue());
+            }
+            header.flush();
+
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write_fully(channel, ByteBuffer.wrap(header_bytes.toByteArray()));
+                channel.position((long) header_pages * page_size);
+
+                for(int i = 0; i < num_files; i++){
+                    AbstractFile<? extends AbstractBlock> file = db.get_file(i);
+                    for(int b = 0; b < file.get_num_blocks(); b++){
+                        AbstractBlock block = file.pin(b);
+                        try {
+                            write_fully(channel, block.get_view());
+                        } finally {
+                            file.unpin(b);
+                        }
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // maps the snapshot at path, every file of the returned DB reads its pages from the mapping
+    public static Snapshot open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if(!Arrays.equals(magic, MAGIC)){
+                throw new IllegalArgumentException(path + " is not a DB snapshot");
+            }
+            int version = header.getInt();
+            if(version != VERSION){
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+            }
+
+            DB db = new DB();
+            int num_files = header.getInt();
+            for(int i = 0; i < num_files; i++){
+                byte file_type = header.get();
+                byte key_type = header.get();
+                int first_page = header.getInt();
+                int num_blocks = header.getInt();
+                byte[] kinds = new byte[num_blocks];
+                header.get(kinds);
+
+                AbstractFile<? extends AbstractBlock> file = create_file(file_type, key_type);
+                // copy-on-write, so later inserts work but never touch the image
+                ByteBuffer region = channel.map(FileChannel.MapMode.PRIVATE, (long) first_page * page_size, (long) num_blocks * page_size);
+                file.map_pages(region, kinds);
+                db.addFile(file);
+            }
+
+            HashMap<String, Integer> catalog = new HashMap<>();
+            int num_entries = header.getInt();
+            for(int i = 0; i < num_entries; i++){
+                byte[] name = new byte[header.getShort()];
+                header.get(name);
+                catalog.put(new String(name, StandardCharsets.UTF_8), header.getInt());
+            }
+            return new Snapshot(db, catalog);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte file_type(AbstractFile<? extends AbstractBlock> file) {
+        return file instanceof BPlusTreeIndexFile ? INDEX_FILE : RELATIONAL_FILE;
+    }
+
+    static byte key_type(AbstractFile<? extends AbstractBlock> file) {
+        if(!(file instanceof BPlusTreeIndexFile)){
+            return 0;
+        }
+        Class<?> typeClass = ((BPlusTreeIndexFile<?>) file).getTypeClass();
+        for(int i = 0; i < KEY_TYPES.length; i++){
+            if(KEY_TYPES[i].equals(typeClass)){
+                return (byte) i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported key type " + typeClass);
+    }
+
+    // empty file of the given type, its blocks are attached by the caller
+    static AbstractFile<? extends AbstractBlock> create_file(byte file_type, byte key_type) {
+        if(file_type == INDEX_FILE){
+            return new BPlusTreeIndexFile<>(KEY_TYPES[key_type]);
+        }
+        return new File();
+    }
+
+    private static void write_fully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+}
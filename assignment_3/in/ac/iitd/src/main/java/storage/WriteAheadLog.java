@@ -0,0 +1,427 @@
+package storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/*
+    * Redo log of page level changes to the files of a DB.
+    *
+    * Every record is - length | type | payload | crc32(type | payload)
+    * WRITE     - file id | block id | offset | length | bytes       (AbstractBlock.write_data)
+    * NEW_BLOCK - file id | block id | kind | page                     (AbstractFile.add_block)
+    * NEW_FILE  - file id | file type | key type                       (DB.addFile)
+    * CATALOG   - file id | len(name) | name                           (name given to a file by StorageManager)
+    * COMMIT    - no payload
+    *
+    * Records are buffered in memory and only reach the disk on commit, as decided by the FsyncPolicy.
+    * Commits that arrive while a sync is running are made durable together by the next sync (group commit).
+    * Replaying is idempotent, so a log can be replayed over a snapshot that already holds some of its changes.
+ */
+public class WriteAheadLog {
+
+    public enum FsyncPolicy {
+        PER_COMMIT, // commit returns once its records are on disk
+        BATCHED,    // every batch_size commits are synced together, commit only waits for the last one
+        PERIODIC    // a background thread syncs every period_ms, commit never waits
+    }
+
+    private static final byte WRITE = 1;
+    private static final byte NEW_BLOCK = 2;
+    private static final byte NEW_FILE = 3;
+    private static final byte CATALOG = 4;
+    private static final byte COMMIT = 5;
+
+    // buffered records are handed to the OS (not synced) once they grow past this
+    private static final int spill_size = 1 << 20;
+
+    private final Path path;
+    // replaced by truncate, only used under io_lock once records are appended
+    private FileChannel channel;
+    private final FsyncPolicy policy;
+    private final int batch_size;
+
+    private final Object io_lock = new Object();
+    private ByteBuffer pending;
+    private long appended_lsn; // end of the last record appended
+    private long durable_lsn;  // everything before this is synced
+    private boolean syncing;
+    private int unsynced_commits;
+    private final CRC32 crc = new CRC32();
+
+    private Thread syncer;
+    private volatile boolean closed;
+
+    public WriteAheadLog(Path path, FsyncPolicy policy, int batch_size, long period_ms) {
+        this.path = path;
+        this.policy = policy;
+        this.batch_size = Math.max(1, batch_size);
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.appended_lsn = channel.size();
+            this.durable_lsn = appended_lsn;
+            channel.position(appended_lsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.pending = ByteBuffer.allocate(64 * 1024);
+
+        if(policy == FsyncPolicy.PERIODIC){
+            syncer = new Thread(() -> {
+                while(!closed){
+                    try {
+                        Thread.sleep(period_ms);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    sync();
+                }
+            }, "wal-syncer");
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+    }
+
+    public WriteAheadLog(Path path) {
+        this(path, FsyncPolicy.PER_COMMIT, 1, 0);
+    }
+
+    public Path get_path() {
+        return path;
+    }
+
+    void log_write(int file_id, AbstractBlock block, int offset, int length) {
+        synchronized (this) {
+            ensure(4 + 1 + 12 + length + 4);
+            int start = begin(WRITE);
+            pending.putInt(file_id);
+            pending.putInt(block.block_id);
+            pending.putShort((short) offset);
+            pending.putShort((short) length);
+            ByteBuffer src = block.buffer.duplicate();
+            src.position(offset);
+            src.limit(offset + length);
+            pending.put(src);
+            end(start);
+        }
+        spill_if_large();
+    }
+
+    void log_new_block(int file_id, AbstractBlock block, byte kind) {
+        synchronized (this) {
+            ensure(4 + 1 + 9 + PageFile.page_size + 4);
+            int start = begin(NEW_BLOCK);
+            pending.putInt(file_id);
+            pending.putInt(block.block_id);
+            pending.put(kind);
+            ByteBuffer src = block.buffer.duplicate();
+            src.position(0);
+            src.limit(PageFile.page_size);
+            pending.put(src);
+            end(start);
+        }
+        spill_if_large();
+    }
+
+    synchronized void log_new_file(int file_id, byte file_type, byte key_type) {
+        ensure(4 + 1 + 6 + 4);
+        int start = begin(NEW_FILE);
+        pending.putInt(file_id);
+        pending.put(file_type);
+        pending.put(key_type);
+        end(start);
+    }
+
+    public synchronized void log_catalog(String name, int file_id) {
+        byte[] name_bytes = name.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + 1 + 6 + name_bytes.length + 4);
+        int start = begin(CATALOG);
+        pending.putInt(file_id);
+        pending.putShort((short) name_bytes.length);
+        pending.put(name_bytes);
+        end(start);
+    }
+
+    // marks everything logged so far as committed, returns the lsn of the commit
+    public long commit() {
+        long lsn;
+        boolean wait_for_sync;
+        synchronized (this) {
+            ensure(4 + 1 + 4);
+            end(begin(COMMIT));
+            lsn = appended_lsn;
+            unsynced_commits++;
+            wait_for_sync = policy == FsyncPolicy.PER_COMMIT
+                    || (policy == FsyncPolicy.BATCHED && unsynced_commits >= batch_size);
+        }
+        if(wait_for_sync){
+            sync_to(lsn);
+        } else {
+            spill_if_large();
+        }
+        return lsn;
+    }
+
+    // end of the last record appended, records appended later start at or after it, see truncate
+    public synchronized long get_lsn() {
+        return appended_lsn;
+    }
+
+    // makes every record appended so far durable
+    public void sync() {
+        long lsn;
+        synchronized (this) {
+            lsn = appended_lsn;
+        }
+        sync_to(lsn);
+    }
+
+    private void sync_to(long lsn) {
+        synchronized (this) {
+            while(durable_lsn < lsn && syncing){
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for log sync", e);
+                }
+            }
+            if(durable_lsn >= lsn){
+                return;
+            }
+            // this thread syncs for everybody who committed up to now
+            syncing = true;
+        }
+        long synced = -1;
+        // a truncate in between would move the records to another file and shift their lsns
+        synchronized (io_lock) {
+            try {
+                synced = write_pending();
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                synchronized (this) {
+                    if(synced > durable_lsn){
+                        durable_lsn = synced;
+                        unsynced_commits = 0;
+                    }
+                    syncing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void spill_if_large() {
+        boolean large;
+        synchronized (this) {
+            large = pending.position() >= spill_size;
+        }
+        if(large){
+            write_pending();
+        }
+    }
+
+    // hands the buffered records to the OS in log order, returns the lsn they end at
+    private long write_pending() {
+        synchronized (io_lock) {
+            ByteBuffer batch;
+            long end;
+            synchronized (this) {
+                batch = pending;
+                batch.flip();
+                end = appended_lsn;
+                pending = ByteBuffer.allocate(batch.capacity());
+            }
+            try {
+                while(batch.hasRemaining()){
+                    channel.write(batch);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return end;
+        }
+    }
+
+    private void ensure(int bytes) {
+        if(pending.remaining() < bytes){
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + bytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private int begin(byte type) {
+        int start = pending.position();
+        pending.putInt(0); // length, filled in by end
+        pending.put(type);
+        return start;
+    }
+
+    private void end(int start) {
+        int body = pending.position() - start - 4;
+        pending.putInt(start, body);
+        crc.reset();
+        crc.update(pending.array(), pending.arrayOffset() + start + 4, body);
+        pending.putInt((int) crc.getValue());
+        appended_lsn += pending.position() - start;
+    }
+
+    // drops the records before lsn, see get_lsn, used once a snapshot holds everything they describe
+    // records appended since are kept, the snapshot may not hold them. They are copied to a new log that
+    // replaces this one atomically, and their lsns start at 0 again
+    public void truncate(long lsn) {
+        synchronized (io_lock) {
+            long end = write_pending();
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                try (FileChannel copy = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long position = lsn;
+                    while(position < end){
+                        position += channel.transferTo(position, end - position, copy);
+                    }
+                    copy.force(true);
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(end - lsn);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            synchronized (this) {
+                // the kept records were synced with the copy, records appended since are still pending
+                appended_lsn -= lsn;
+                durable_lsn = end - lsn;
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        if(syncer != null){
+            syncer.interrupt();
+        }
+        sync();
+        synchronized (io_lock) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // applies every committed record of the log to db and returns the catalog entries it logged
+    // records after the last commit belong to an unfinished operation and are cut off the log
+    // must be called before anything new is appended
+    public HashMap<String, Integer> replay(DB db) {
+        HashMap<String, Integer> catalog = new HashMap<>();
+        long committed = 0;
+        try {
+            // first pass - find where the last complete commit ends
+            try (DataInputStream in = open_reader()) {
+                long position = 0;
+                byte[] body;
+                while((body = read_record(in)) != null){
+                    position += 4 + body.length + 4;
+                    if(body[0] == COMMIT){
+                        committed = position;
+                    }
+                }
+            }
+
+            // second pass - redo everything up to it
+            try (DataInputStream in = open_reader()) {
+                long position = 0;
+                while(position < committed){
+                    byte[] body = read_record(in);
+                    position += 4 + body.length + 4;
+                    apply(ByteBuffer.wrap(body), db, catalog);
+                }
+            }
+
+            synchronized (this) {
+                channel.truncate(committed);
+                channel.position(committed);
+                appended_lsn = committed;
+                durable_lsn = committed;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return catalog;
+    }
+
+    private DataInputStream open_reader() throws IOException {
+        InputStream in = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+        return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    }
+
+    // returns type | payload of the next record, or null at the end of the log or at a torn record
+    private byte[] read_record(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if(length <= 0 || length > 16 + 2 * PageFile.page_size){
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            int checksum = in.readInt();
+            CRC32 check = new CRC32();
+            check.update(body, 0, length);
+            if((int) check.getValue() != checksum){
+                return null;
+            }
+            return body;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void apply(ByteBuffer record, DB db, HashMap<String, Integer> catalog) {
+        byte type = record.get();
+        if(type == COMMIT){
+            return;
+        }
+        int file_id = record.getInt();
+        if(type == NEW_FILE){
+            byte file_type = record.get();
+            byte key_type = record.get();
+            if(file_id >= db.get_num_files()){
+                db.addFile(Snapshot.create_file(file_type, key_type));
+            }
+        } else if(type == NEW_BLOCK){
+            AbstractFile<? extends AbstractBlock> file = db.get_file(file_id);
+            int block_id = record.getInt();
+            byte kind = record.get();
+            file.redo_block(block_id, record, kind);
+        } else if(type == WRITE){
+            int block_id = record.getInt();
+            int offset = record.getShort() & 0xFFFF;
+            byte[] bytes = new byte[record.getShort() & 0xFFFF];
+            record.get(bytes);
+            db.write_data(file_id, block_id, offset, bytes);
+        } else if(type == CATALOG){
+            byte[] name = new byte[record.getShort() & 0xFFFF];
+            record.get(name);
+            catalog.put(new String(name, StandardCharsets.UTF_8), file_id);
+        }
+    }
+}
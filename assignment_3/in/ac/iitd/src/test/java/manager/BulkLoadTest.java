@@ -0,0 +1,167 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import manager.StorageManager;
+import storage.RecordId;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class BulkLoadTest {
+
+    private RexLiteral literal(int value) {
+        return new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    // leaves are the last level of the BFS, as many keys as there are non null values
+    private <T> List<T> leaf_keys(StorageManager storage_manager, String table, String column) {
+        int index = storage_manager.get_schema(table).get_column_index(column);
+        int count = 0;
+        List<Object[]> records;
+        for(int block_id = 1; (records = storage_manager.get_records_from_block(table, block_id)) != null; block_id++) {
+            for(Object[] record : records) {
+                if(record[index] != null) {
+                    count++;
+                }
+            }
+        }
+        ArrayList<T> bfs = storage_manager.return_bfs_index(table, column);
+        return bfs.subList(bfs.size() - count, bfs.size());
+    }
+
+    @Test
+    public void test_bulk_load() {
+        try {
+            StorageManager inserted = new StorageManager();
+            MyCalciteConnection insertedConnection = new MyCalciteConnection(inserted);
+            StorageManager bulk = new StorageManager();
+            MyCalciteConnection bulkConnection = new MyCalciteConnection(bulk);
+
+            // same entries in the same order as inserting them one by one, for unique, duplicate and string keys
+            String[][] indexes = { { "rental", "rental_id" }, { "rental", "customer_id" }, { "film", "title" }, { "payment", "amount" } };
+            for(String[] index : indexes) {
+                assertTrue(inserted.create_index(index[0], index[1], 10));
+                assertTrue(bulk.create_index(index[0], index[1], 10, 1.0));
+                assertEquals(index[1], leaf_keys(inserted, index[0], index[1]), leaf_keys(bulk, index[0], index[1]));
+                // packed leaves need fewer internal keys
+                assertTrue(bulk.return_bfs_index(index[0], index[1]).size() <= inserted.return_bfs_index(index[0], index[1]).size());
+            }
+            assertFalse(bulk.create_index("rental", "rental_id", 10, 1.0));
+
+            for(int customer_id = 1; customer_id <= 600; customer_id++) {
+                assertEquals(inserted.search_rid("rental", "customer_id", literal(customer_id)),
+                        bulk.search_rid("rental", "customer_id", literal(customer_id)));
+            }
+
+            // a loosely filled index keeps splitting correctly on inserts
+            assertTrue(bulk.create_index("inventory", "inventory_id", 5, 0.6));
+            for(int inventory_id = 1; inventory_id <= 4581; inventory_id += 97) {
+                Object[] record = bulk.get_record("inventory", bulk.search_rid("inventory", "inventory_id", literal(inventory_id)));
+                assertEquals(inventory_id, record[0]);
+            }
+            Object[] row = bulk.get_records_from_block("inventory", 1).get(0).clone();
+            for(int inventory_id = 10001; inventory_id <= 10200; inventory_id++) {
+                row[0] = inventory_id;
+                long rid = bulk.insert_row("inventory", row);
+                assertEquals(rid, bulk.search_rid("inventory", "inventory_id", literal(inventory_id)));
+            }
+
+            insertedConnection.close();
+            bulkConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_string_keys() {
+        try {
+            // long keys with a common beginning, loaded with a large order so the leaves fill their blocks
+            List<String> keys = new ArrayList<>();
+            long[] rids = new long[3000];
+            for(int i = 0; i < rids.length; i++) {
+                keys.add("customer." + (i * 7919 % rids.length) + "@sakilacustomer.org");
+                rids[i] = RecordId.make(i / 20 + 1, i % 20);
+            }
+            BPlusTreeIndexFile<String> index = new BPlusTreeIndexFile<>(1000, String.class);
+            index.bulkLoad(keys, rids, 1.0);
+            BPlusTreeIndexFile<String> whole = new BPlusTreeIndexFile<>(1000, String.class);
+            for(int i = 0; i < rids.length; i++) {
+                whole.insert(keys.get(i), RecordId.block_id(rids[i]), RecordId.slot(rids[i]));
+            }
+            assertTrue(index.get_num_blocks() < whole.get_num_blocks());
+
+            // separators are shorter than the keys but still lead to every key
+            List<String> bfs = index.return_bfs();
+            List<String> sorted = new ArrayList<>(keys);
+            Collections.sort(sorted);
+            assertEquals(sorted, bfs.subList(bfs.size() - keys.size(), bfs.size()));
+            for(String separator : bfs.subList(0, bfs.size() - keys.size())) {
+                assertTrue(separator, separator.length() < "customer.0000@".length());
+            }
+            for(int i = 0; i < rids.length; i++) {
+                assertEquals(rids[i], index.searchRid(keys.get(i)));
+            }
+
+            // keys outside of the prefixes of the leaves and more truncated separators from splits
+            for(int i = 0; i < 500; i++) {
+                String key = (i % 2 == 0 ? "a" : "customer.1") + i;
+                index.insert(key, 5000 + i, i % 20);
+                assertEquals(RecordId.make(5000 + i, i % 20), index.searchRid(key));
+            }
+            for(int i = 0; i < rids.length; i++) {
+                assertEquals(rids[i], index.searchRid(keys.get(i)));
+            }
+            assertEquals(-1, index.searchRid("customer."));
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_create_indexes() {
+        try {
+            StorageManager single = new StorageManager();
+            MyCalciteConnection singleConnection = new MyCalciteConnection(single);
+            StorageManager multi = new StorageManager();
+            MyCalciteConnection multiConnection = new MyCalciteConnection(multi);
+
+            // nothing is created if any column is unknown or indexed twice
+            assertFalse(multi.create_indexes("rental", Arrays.asList("customer_id", "no_such_column"), 10, 1.0));
+            assertFalse(multi.create_indexes("rental", Arrays.asList("customer_id", "customer_id"), 10, 1.0));
+            assertFalse(multi.check_index_exists("rental", "customer_id"));
+
+            // one scan, same trees as building them one at a time
+            List<String> columns = Arrays.asList("rental_date", "inventory_id", "customer_id", "return_date");
+            assertTrue(multi.create_indexes("rental", columns, 10, 0.8));
+            for(String column : columns) {
+                assertTrue(single.create_index("rental", column, 10, 0.8));
+                assertEquals(column, single.return_bfs_index("rental", column), multi.return_bfs_index("rental", column));
+            }
+            assertFalse(multi.create_indexes("rental", Arrays.asList("staff_id", "customer_id"), 10, 1.0));
+            assertFalse(multi.check_index_exists("rental", "staff_id"));
+
+            singleConnection.close();
+            multiConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
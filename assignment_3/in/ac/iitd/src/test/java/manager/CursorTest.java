@@ -0,0 +1,92 @@
+import manager.RecordPredicate;
+import manager.StorageManager;
+import manager.TableCursor;
+import storage.BufferPool;
+import storage.DB;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CursorTest {
+
+    // a full cursor scan against get_records_from_block, block after block
+    private void check_scan(StorageManager storage_manager, String table, int[] columns) {
+        try (TableCursor cursor = storage_manager.open_cursor(table, columns, null)) {
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block(table, block_id, columns)) != null; block_id++) {
+                for(Object[] record : records) {
+                    assertTrue(cursor.next());
+                    assertArrayEquals(record, cursor.get_row());
+                }
+            }
+            assertFalse(cursor.next());
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void test_cursor() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            check_scan(storage_manager, "rental", null);
+            check_scan(storage_manager, "address", storage_manager.get_columns("address", Arrays.asList("postal_code", "address")));
+            assertNull(storage_manager.open_cursor("no_such_table", null, null));
+
+            // a filtered cursor gives the records get_records_from_block gives with the same filter
+            RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(
+                    calciteConnection.parseSql("select * from film where length > 100 and rating <> 'R'")));
+            Filter filter = (Filter) ((Project) relNode).getInput();
+            RecordPredicate predicate = storage_manager.compile_filter("film", filter.getInput().getRowType(), filter.getCondition());
+            try (TableCursor filtered = storage_manager.open_cursor("film", null, predicate)) {
+                List<Object[]> records;
+                for(int block_id = 1; (records = storage_manager.get_records_from_block("film", block_id, null, predicate)) != null; block_id++) {
+                    for(Object[] record : records) {
+                        assertTrue(filtered.next());
+                        assertArrayEquals(record, filtered.get_row());
+                    }
+                }
+                assertFalse(filtered.next());
+            }
+
+            // the row is reused, its RID points at the same record
+            TableCursor cursor = storage_manager.open_cursor("actor", null, null);
+            assertTrue(cursor.next());
+            Object[] row = cursor.get_row();
+            assertArrayEquals(row.clone(), storage_manager.get_record("actor", cursor.get_rid()));
+            assertTrue(cursor.next());
+            assertSame(row, cursor.get_row());
+            assertArrayEquals(row.clone(), storage_manager.get_record("actor", cursor.get_rid()));
+
+            // stopping early
+            cursor.close();
+            assertFalse(cursor.next());
+
+            calciteConnection.close();
+
+            // tables on disk, blocks are prefetched through a pool much smaller than the table
+            StorageManager paged = new StorageManager(new DB(new BufferPool(8)));
+            MyCalciteConnection pagedConnection = new MyCalciteConnection(paged);
+            check_scan(paged, "rental", null);
+            cursor = paged.open_cursor("rental", null, null);
+            for(int i = 0; i < 500; i++) {
+                assertTrue(cursor.next());
+            }
+            cursor.close();
+            pagedConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
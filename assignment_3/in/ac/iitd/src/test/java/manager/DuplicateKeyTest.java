@@ -0,0 +1,137 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import manager.StorageManager;
+import storage.RecordId;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class DuplicateKeyTest {
+
+    private RexLiteral literal(int value) {
+        return new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    @Test
+    public void test_duplicates() {
+        try {
+            // 10 keys with 100 entries each, inserted out of RID order, so every key spans many leaves
+            BPlusTreeIndexFile<Integer> index = new BPlusTreeIndexFile<>(4, Integer.class);
+            List<TreeSet<Long>> expected = new ArrayList<>();
+            for(int key = 0; key < 10; key++) {
+                expected.add(new TreeSet<>());
+            }
+            for(int i = 0; i < 1000; i++) {
+                int n = i * 7919 % 1000;
+                index.insert(n % 10, n / 10 + 1, n % 7);
+                expected.get(n % 10).add(RecordId.make(n / 10 + 1, n % 7));
+            }
+            for(int key = 0; key < 10; key++) {
+                assertEquals(new ArrayList<>(expected.get(key)), index.searchAll(key));
+                assertEquals((long) expected.get(key).first(), index.searchRid(key));
+            }
+            assertTrue(index.searchAll(10).isEmpty());
+            assertEquals(-1, index.search(-1));
+
+            // the entry of one record is removed, wherever it is in the run of its key
+            for(int key = 0; key < 10; key++) {
+                long rid = new ArrayList<>(expected.get(key)).get(key * 9);
+                assertTrue(index.delete(key, rid));
+                assertFalse(index.delete(key, rid));
+                expected.get(key).remove(rid);
+                assertEquals(new ArrayList<>(expected.get(key)), index.searchAll(key));
+            }
+
+            // moved records, the entries are moved to keep the RID order
+            for(int key = 0; key < 10; key++) {
+                long old_rid = expected.get(key).last();
+                long new_rid = RecordId.make(0, key);
+                assertTrue(index.update(key, old_rid, new_rid));
+                expected.get(key).remove(old_rid);
+                expected.get(key).add(new_rid);
+                assertEquals(new ArrayList<>(expected.get(key)), index.searchAll(key));
+            }
+
+            // a bulk loaded index finds the same entries
+            List<Integer> keys = new ArrayList<>();
+            List<Long> rids = new ArrayList<>();
+            for(int key = 9; key >= 0; key--) {
+                for(long rid : expected.get(key).descendingSet()) {
+                    keys.add(key);
+                    rids.add(rid);
+                }
+            }
+            BPlusTreeIndexFile<Integer> bulk = new BPlusTreeIndexFile<>(4, Integer.class);
+            bulk.bulkLoad(keys, rids.stream().mapToLong(Long::longValue).toArray(), 1.0);
+            for(int key = 0; key < 10; key++) {
+                assertEquals(new ArrayList<>(expected.get(key)), bulk.searchAll(key));
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_search_all() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            assertNull(storage_manager.search_all("rental", "customer_id", literal(1)));
+            storage_manager.create_index("rental", "customer_id", 10);
+            storage_manager.create_index("inventory", "film_id", 10, 1.0);
+
+            // number of rows of each customer and film
+            int customer_column = storage_manager.get_schema("rental").get_column_index("customer_id");
+            int film_column = storage_manager.get_schema("inventory").get_column_index("film_id");
+            Map<Integer, Integer> rentals = new HashMap<>();
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("rental", block_id)) != null; block_id++) {
+                for(Object[] record : records) {
+                    rentals.merge((Integer) record[customer_column], 1, Integer::sum);
+                }
+            }
+            Map<Integer, Integer> copies = new HashMap<>();
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("inventory", block_id)) != null; block_id++) {
+                for(Object[] record : records) {
+                    copies.merge((Integer) record[film_column], 1, Integer::sum);
+                }
+            }
+
+            for(int customer_id = 1; customer_id <= 600; customer_id++) {
+                List<Long> rids = storage_manager.search_all("rental", "customer_id", literal(customer_id));
+                assertEquals((int) rentals.getOrDefault(customer_id, 0), rids.size());
+                for(int i = 0; i < rids.size(); i++) {
+                    assertTrue(i == 0 || rids.get(i - 1) < rids.get(i));
+                    assertEquals(customer_id, storage_manager.get_record("rental", rids.get(i))[customer_column]);
+                }
+            }
+            for(int film_id = 1; film_id <= 1001; film_id++) {
+                List<Long> rids = storage_manager.search_all("inventory", "film_id", literal(film_id));
+                assertEquals((int) copies.getOrDefault(film_id, 0), rids.size());
+                for(long rid : rids) {
+                    assertEquals(film_id, storage_manager.get_record("inventory", rid)[film_column]);
+                }
+            }
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
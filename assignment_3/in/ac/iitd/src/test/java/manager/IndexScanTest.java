@@ -0,0 +1,205 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
+import manager.StorageManager;
+import optimizer.convention.PConvention;
+import optimizer.rules.PRules;
+import storage.RecordId;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.tools.RuleSets;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexScanTest {
+
+    // keys of the scan against the keys of all entries in the range, in key order
+    private <T extends Comparable<T>> void check(BPlusTreeIndexFile<T> index, List<T> sorted, T lower, boolean lower_inclusive,
+                                                 T upper, boolean upper_inclusive) {
+        List<T> expected = new ArrayList<>();
+        for(T key : sorted) {
+            int l = lower == null ? 1 : key.compareTo(lower);
+            int u = upper == null ? -1 : key.compareTo(upper);
+            if((l > 0 || (l == 0 && lower_inclusive)) && (u < 0 || (u == 0 && upper_inclusive))) {
+                expected.add(key);
+            }
+        }
+        List<T> actual = new ArrayList<>();
+        IndexCursor<T> cursor = index.scan(lower, lower_inclusive, upper, upper_inclusive);
+        while(cursor.next()) {
+            actual.add(cursor.getKey());
+        }
+        assertEquals(lower + " " + upper, expected, actual);
+    }
+
+    @Test
+    public void test_scan() {
+        try {
+            // every key three times, so equal keys span leaves
+            BPlusTreeIndexFile<Integer> index = new BPlusTreeIndexFile<>(4, Integer.class);
+            List<Integer> sorted = new ArrayList<>();
+            for(int i = 0; i < 300; i++) {
+                int key = (i * 37 % 100) * 2;
+                index.insert(key, i + 1, 0);
+            }
+            for(int key = 0; key < 200; key += 2) {
+                for(int n = 0; n < 3; n++) {
+                    sorted.add(key);
+                }
+            }
+            int[][] bounds = { { 0, 198 }, { 10, 10 }, { 11, 11 }, { 9, 51 }, { 50, 150 }, { -5, 3 }, { 196, 400 }, { 60, 40 } };
+            for(int[] bound : bounds) {
+                for(int flags = 0; flags < 4; flags++) {
+                    check(index, sorted, bound[0], (flags & 1) != 0, bound[1], (flags & 2) != 0);
+                }
+                check(index, sorted, null, false, bound[1], true);
+                check(index, sorted, bound[0], false, null, false);
+            }
+            check(index, sorted, null, false, null, false);
+
+            // RIDs come with their keys
+            IndexCursor<Integer> cursor = index.scan(42, true, 42, true);
+            int found = 0;
+            while(cursor.next()) {
+                assertEquals(42, (RecordId.block_id(cursor.getRid()) - 1) * 37 % 100 * 2);
+                assertEquals(0, RecordId.slot(cursor.getRid()));
+                found++;
+            }
+            assertEquals(3, found);
+
+            // emptied leaves are skipped
+            for(int key = 20; key < 120; key += 2) {
+                index.delete(key);
+                sorted.remove(Integer.valueOf(key));
+                sorted.remove(Integer.valueOf(key));
+                sorted.remove(Integer.valueOf(key));
+            }
+            check(index, sorted, 10, true, 130, false);
+            check(index, sorted, 20, false, null, false);
+
+            // truncated separators and prefixes of a bulk loaded string index
+            List<String> keys = new ArrayList<>();
+            long[] rids = new long[2000];
+            for(int i = 0; i < rids.length; i++) {
+                keys.add("customer." + (i * 7919 % rids.length) + "@sakilacustomer.org");
+                rids[i] = RecordId.make(i / 20 + 1, i % 20);
+            }
+            BPlusTreeIndexFile<String> strings = new BPlusTreeIndexFile<>(1000, String.class);
+            strings.bulkLoad(keys, rids, 1.0);
+            List<String> sorted_keys = new ArrayList<>(keys);
+            sorted_keys.sort(null);
+            check(strings, sorted_keys, "customer.1", true, "customer.2", false);
+            check(strings, sorted_keys, "customer.1234@sakilacustomer.org", false, "customer.1250", true);
+            check(strings, sorted_keys, "customer.", true, "customer.0@sakilacustomer.org", true);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    private List<Object[]> evaluate(MyCalciteConnection calciteConnection, String sql) throws Exception {
+        RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(calciteConnection.parseSql(sql)));
+        RelNode phyRelNode = calciteConnection.logicalToPhysical(relNode,
+                relNode.getTraitSet().plus(PConvention.INSTANCE), RuleSets.ofList(PRules.PCustomRule.INSTANCE));
+        return calciteConnection.evaluate(phyRelNode);
+    }
+
+    @Test
+    public void test_index_scan() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            RexBuilder builder = new RexBuilder(new JavaTypeFactoryImpl());
+            RexLiteral hundred = builder.makeExactLiteral(BigDecimal.valueOf(100));
+
+            assertNull(storage_manager.search_range("actor", "actor_id", hundred, true, null, false));
+            calciteConnection.create_index("actor", "actor_id", 10);
+            List<Long> rids = storage_manager.search_range("actor", "actor_id", hundred, false, null, false);
+            assertEquals(100, rids.size());
+            for(int i = 0; i < rids.size(); i++) {
+                assertEquals(101 + i, storage_manager.get_record("actor", rids.get(i))[0]);
+            }
+
+            List<Object[]> result = evaluate(calciteConnection, "select * from actor where actor_id >= 100");
+            assertEquals(101, result.size());
+            for(int i = 0; i < result.size(); i++) {
+                assertEquals(4, result.get(i).length);
+                assertEquals(100 + i, result.get(i)[0]);
+            }
+
+            // the rest of the filter is applied to the records found
+            result = evaluate(calciteConnection, "select * from actor where actor_id between 10 and 60 "
+                    + "and actor_id <> 20 and last_name > 'M'");
+            int expected = 0;
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("actor", block_id)) != null; block_id++) {
+                for(Object[] record : records) {
+                    int id = (Integer) record[0];
+                    if(id >= 10 && id <= 60 && id != 20 && ((String) record[2]).compareTo("M") > 0) {
+                        expected++;
+                    }
+                }
+            }
+            assertEquals(expected, result.size());
+            for(Object[] row : result) {
+                assertNotEquals(20, row[0]);
+                assertTrue(((String) row[2]).compareTo("M") > 0);
+            }
+
+            // bounds beyond the int range or with a fraction, rounded to the ids they admit
+            assertEquals(200, evaluate(calciteConnection, "select * from actor where actor_id <= 3000000000").size());
+            assertEquals(0, evaluate(calciteConnection, "select * from actor where actor_id >= 3000000000").size());
+            assertEquals(200, evaluate(calciteConnection, "select * from actor where actor_id > -3000000000").size());
+            result = evaluate(calciteConnection, "select * from actor where actor_id > 197.5 and actor_id < 199.5");
+            assertEquals(2, result.size());
+            assertEquals(198, result.get(0)[0]);
+            RexLiteral half = builder.makeExactLiteral(new BigDecimal("9.5"));
+            rids = storage_manager.search_range("actor", "actor_id", half, false, null, false);
+            assertEquals(191, rids.size());
+            assertEquals(10, storage_manager.get_record("actor", rids.get(0))[0]);
+            assertTrue(storage_manager.search_range("actor", "actor_id", half, true, half, true).isEmpty());
+
+            // without an index on the column every record is tested
+            result = evaluate(calciteConnection, "select * from actor where first_name = 'Penelope'");
+            assertEquals(4, result.size());
+
+            // filters RecordPredicate does not support and projections that are not plain columns
+            result = evaluate(calciteConnection, "select actor_id + 1 from actor where actor_id > 5");
+            assertEquals(195, result.size());
+            for(int i = 0; i < result.size(); i++) {
+                assertArrayEquals(new Object[] { 7 + i }, result.get(i));
+            }
+            result = evaluate(calciteConnection, "select actor_id * 2, upper(last_name) from actor "
+                    + "where actor_id < 100 and first_name like 'P%'");
+            List<Object[]> like = evaluate(calciteConnection, "select actor_id, last_name from actor where first_name like 'P%'");
+            expected = 0;
+            for(Object[] row : like) {
+                if((Integer) row[0] < 100) {
+                    assertArrayEquals(new Object[] { 2 * (Integer) row[0], ((String) row[1]).toUpperCase() }, result.get(expected));
+                    expected++;
+                }
+            }
+            assertEquals(expected, result.size());
+            assertTrue(expected > 0 && expected < like.size());
+            result = evaluate(calciteConnection, "select first_name from actor where cast(actor_id as varchar) = '42'");
+            assertEquals(1, result.size());
+            assertEquals(calciteConnection.get_records_from_block("actor", 1).get(41)[1], result.get(0)[0]);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
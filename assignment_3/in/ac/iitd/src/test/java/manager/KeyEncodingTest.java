@@ -0,0 +1,83 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.KeyEncoding;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class KeyEncodingTest {
+
+    // encoded keys compare like the keys, and decode back to them
+    private <T> void check_order(T[] sorted, Class<T> typeClass) {
+        for(int i = 0; i < sorted.length; i++) {
+            byte[] encoded = KeyEncoding.encode(sorted[i], typeClass);
+            assertEquals(sorted[i], KeyEncoding.decode(encoded, 0, encoded.length, typeClass));
+            for(int j = 0; j < sorted.length; j++) {
+                int expected = Integer.signum(Integer.compare(i, j));
+                int actual = Integer.signum(KeyEncoding.compare(encoded, KeyEncoding.encode(sorted[j], typeClass)));
+                assertEquals(sorted[i] + " vs " + sorted[j], expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void test_key_order() {
+        try {
+            check_order(new Integer[] { Integer.MIN_VALUE, -65536, -1, 0, 1, 255, 256, Integer.MAX_VALUE }, Integer.class);
+            check_order(new Float[] { Float.NEGATIVE_INFINITY, -1e30f, -1.5f, -Float.MIN_VALUE, -0.0f, 0.0f,
+                    Float.MIN_VALUE, 0.25f, 3f, Float.POSITIVE_INFINITY, Float.NaN }, Float.class);
+            check_order(new Double[] { Double.NEGATIVE_INFINITY, -1e300, -2.5, -0.0, 0.0, 1e-300, 4.99, 5.0,
+                    Double.POSITIVE_INFINITY, Double.NaN }, Double.class);
+            check_order(new Boolean[] { false, true }, Boolean.class);
+            check_order(new String[] { "", "\0", "\0\0", "\0a", "a", "a\0", "a\0b", "ab", "b", "z", "\u00e9", "\u4e2d" }, String.class);
+
+            // bytes after an encoded string do not change its order
+            byte[] a = KeyEncoding.encode("a", String.class);
+            byte[] ab = KeyEncoding.encode("ab", String.class);
+            byte[] a_suffix = Arrays.copyOf(a, a.length + 1);
+            a_suffix[a.length] = (byte) 0xFF;
+            assertTrue(KeyEncoding.compare(a_suffix, ab) < 0);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_tree_keys() {
+        try {
+            // negative numbers and strings outside of the platform charset
+            BPlusTreeIndexFile<Integer> ints = new BPlusTreeIndexFile<>(4, Integer.class);
+            for(int i = -50; i <= 50; i++) {
+                ints.insert(i * 7919 % 101, i + 100, 0);
+            }
+            for(int i = -50; i <= 50; i++) {
+                assertEquals(i + 100, ints.search(i * 7919 % 101));
+            }
+            assertEquals(-1, ints.search(1000));
+
+            BPlusTreeIndexFile<String> strings = new BPlusTreeIndexFile<>(4, String.class);
+            List<String> keys = new ArrayList<>();
+            for(int i = 0; i < 40; i++) {
+                keys.add("caf\u00e9 " + (char) ('a' + i % 26) + i);
+            }
+            for(int i = 0; i < keys.size(); i++) {
+                strings.insert(keys.get(i), i + 1, 0);
+            }
+            for(int i = 0; i < keys.size(); i++) {
+                assertEquals(i + 1, strings.search(keys.get(i)));
+            }
+            assertTrue(strings.return_bfs().contains(keys.get(0)));
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
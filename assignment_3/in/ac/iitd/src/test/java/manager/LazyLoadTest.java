@@ -0,0 +1,73 @@
+import manager.StorageManager;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LazyLoadTest {
+
+    private RexLiteral literal(int value) {
+        return new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    @Test
+    public void test_lazy_load() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            storage_manager.set_lazy(true);
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            // tables are only registered
+            assertTrue(storage_manager.check_file_exists("actor"));
+            assertTrue(storage_manager.get_tables().isEmpty());
+
+            // concurrent first touches load actor once
+            AtomicInteger rows = new AtomicInteger();
+            Thread[] threads = new Thread[8];
+            for(int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> rows.addAndGet(storage_manager.get_records_from_block("actor", 1).size()));
+                threads[i].start();
+            }
+            for(Thread thread : threads) {
+                thread.join();
+            }
+            int first_block = storage_manager.get_records_from_block("actor", 1).size();
+            assertEquals(threads.length * first_block, rows.get());
+            assertEquals(Collections.singletonList("actor"), storage_manager.get_tables());
+
+            // an index on a deferred table loads the table first
+            assertTrue(storage_manager.create_index("film", "film_id", 10));
+            assertEquals(1, storage_manager.search("film", "film_id", literal(1)));
+            assertEquals(2, storage_manager.get_tables().size());
+
+            // same rows as an eager load
+            StorageManager eager = new StorageManager();
+            MyCalciteConnection eagerConnection = new MyCalciteConnection(eager);
+            List<Object[]> records;
+            for(int block_id = 1; (records = eager.get_records_from_block("actor", block_id)) != null; block_id++) {
+                List<Object[]> lazy_records = storage_manager.get_records_from_block("actor", block_id);
+                assertEquals(records.size(), lazy_records.size());
+                for(int i = 0; i < records.size(); i++) {
+                    assertTrue(Arrays.equals(records.get(i), lazy_records.get(i)));
+                }
+            }
+            eagerConnection.close();
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,46 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import storage.PageFile;
+import storage.RecordId;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class NodeCacheTest {
+
+    @Test
+    public void test_lookups_between_inserts() {
+        try {
+            // every descent caches the internal nodes it passes, the splits of later inserts rewrite them
+            BPlusTreeIndexFile<String> index = new BPlusTreeIndexFile<>(5, String.class);
+            for(int i = 0; i < 2000; i++) {
+                int n = i * 7919 % 2000;
+                index.insert("key." + n, n + 1, 0);
+                for(int j = 0; j <= i; j += 97) {
+                    int m = j * 7919 % 2000;
+                    assertEquals(n + ": key." + m, RecordId.make(m + 1, 0), index.searchRid("key." + m));
+                }
+            }
+            assertEquals(-1, index.searchRid("key"));
+
+            // the same through a mapping of the index, inserts go to the mapped pages
+            Path directory = Files.createTempDirectory("node_cache");
+            index.map_pages(PageFile.create_temp(directory));
+            for(int i = 0; i < 2000; i++) {
+                assertEquals(RecordId.make(i + 1, 0), index.searchRid("key." + i));
+                index.insert("key." + i + ".b", i + 1, 1);
+                assertEquals(RecordId.make(i + 1, 1), index.searchRid("key." + i + ".b"));
+            }
+            for(int i = 0; i < 2000; i++) {
+                assertEquals(RecordId.make(i + 1, 0), index.searchRid("key." + i));
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,72 @@
+import manager.RecordPredicate;
+import manager.StorageManager;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+public class PredicateTest {
+
+    // filtered records of every block against the full records filtered by expected
+    private void check(MyCalciteConnection calciteConnection, StorageManager storage_manager, String table,
+                       String where, Predicate<Object[]> expected) throws Exception {
+        RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(
+                calciteConnection.parseSql("select * from " + table + " where " + where)));
+        Filter filter = (Filter) ((Project) relNode).getInput();
+        RecordPredicate predicate = storage_manager.compile_filter(table, filter.getInput().getRowType(), filter.getCondition());
+        assertNotNull(where, predicate);
+
+        int matched = 0;
+        List<Object[]> records;
+        for(int block_id = 1; (records = storage_manager.get_records_from_block(table, block_id)) != null; block_id++) {
+            List<Object[]> filtered = storage_manager.get_records_from_block(table, block_id, null, predicate);
+            int i = 0;
+            for(Object[] record : records) {
+                if(expected.test(record)) {
+                    assertArrayEquals(where, record, filtered.get(i++));
+                }
+            }
+            assertEquals(where, i, filtered.size());
+            matched += i;
+        }
+        assertTrue(where, matched > 0);
+    }
+
+    @Test
+    public void test_filter_on_encoded_records() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            // schema order of film is film_id, release_year, language_id, rental_duration, rental_rate, length,
+            // replacement_cost, then title, description, rating, ...
+            check(calciteConnection, storage_manager, "film", "film_id >= 100 and film_id < 200",
+                    r -> (Integer) r[0] >= 100 && (Integer) r[0] < 200);
+            check(calciteConnection, storage_manager, "film", "rental_rate > 2.5 and length <= 100 or rating = 'PG'",
+                    r -> ((Double) r[4] > 2.5 && (Integer) r[5] <= 100) || r[9].equals("PG"));
+            check(calciteConnection, storage_manager, "film", "not (length < 60.5) and 'M' > title",
+                    r -> (Integer) r[5] >= 61 && ((String) r[7]).compareTo("M") < 0);
+            check(calciteConnection, storage_manager, "film", "film_id in (1, 7, 500, 999)",
+                    r -> r[0].equals(1) || r[0].equals(7) || r[0].equals(500) || r[0].equals(999));
+
+            // address has empty postal codes, which are null
+            check(calciteConnection, storage_manager, "address", "postal_code is null",
+                    r -> r[2] == null);
+            check(calciteConnection, storage_manager, "address", "postal_code <> 0 or address_id = 1",
+                    r -> (r[2] != null && !r[2].equals(0)) || r[0].equals(1));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
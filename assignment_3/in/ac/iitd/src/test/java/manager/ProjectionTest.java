@@ -0,0 +1,53 @@
+import manager.StorageManager;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Project;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ProjectionTest {
+
+    @Test
+    public void test_projected_records() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            // schema order is actor_id, first_name, last_name, last_update
+            int[] columns = storage_manager.get_columns("actor", Arrays.asList("last_name", "actor_id"));
+            assertArrayEquals(new int[] { 2, 0 }, columns);
+            assertNull(storage_manager.get_columns("actor", Arrays.asList("actor_id", "no_such_column")));
+
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("actor", block_id)) != null; block_id++) {
+                List<Object[]> projected = storage_manager.get_records_from_block("actor", block_id, columns);
+                assertEquals(records.size(), projected.size());
+                for(int i = 0; i < records.size(); i++) {
+                    assertArrayEquals(new Object[] { records.get(i)[2], records.get(i)[0] }, projected.get(i));
+                }
+            }
+
+            // columns of a projection list, the row type of the scan is in CSV order
+            RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(
+                    calciteConnection.parseSql("select last_update, actor_id from actor")));
+            Project project = (Project) relNode;
+            assertArrayEquals(new int[] { 3, 0 },
+                    storage_manager.project_columns("actor", project.getInput().getRowType(), project.getProjects()));
+
+            List<Object[]> ids = calciteConnection.get_records_from_block("actor", 1, Arrays.asList("actor_id"));
+            assertEquals(1, ids.get(0).length);
+            assertEquals(1, ids.get(0)[0]);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
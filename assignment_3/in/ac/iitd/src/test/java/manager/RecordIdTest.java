@@ -0,0 +1,49 @@
+import manager.StorageManager;
+import storage.RecordId;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+public class RecordIdTest {
+
+    private RexLiteral literal(int value) {
+        return new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    @Test
+    public void test_point_lookup() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            storage_manager.create_index("actor", "actor_id", 10);
+
+            // every actor is found through its RID alone
+            for(int actor_id = 1; actor_id <= 200; actor_id++) {
+                long rid = storage_manager.search_rid("actor", "actor_id", literal(actor_id));
+                assertEquals(storage_manager.search("actor", "actor_id", literal(actor_id)), RecordId.block_id(rid));
+                Object[] record = storage_manager.get_record("actor", rid);
+                assertEquals(actor_id, record[0]);
+            }
+            assertEquals(-1, storage_manager.search_rid("actor", "actor_id", literal(201)));
+
+            // a deleted row can not be fetched any more
+            long rid = storage_manager.search_rid("actor", "actor_id", literal(7));
+            assertTrue(storage_manager.delete("actor", "actor_id", literal(7)));
+            assertNull(storage_manager.get_record("actor", rid));
+            assertEquals(-1, storage_manager.search_rid("actor", "actor_id", literal(7)));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,42 @@
+import manager.StorageManager;
+import manager.TableSchema;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TableSchemaTest {
+
+    @Test
+    public void test_schema_and_nulls() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            // fixed length columns come first, both groups in CSV order
+            TableSchema schema = storage_manager.get_schema("address");
+            assertArrayEquals(new String[] { "address_id", "city_id", "postal_code", "address", "address2", "district", "phone", "last_update" }, schema.get_names());
+            assertEquals(3, schema.get_num_fixed());
+            assertEquals(TableSchema.INTEGER, schema.get_type(schema.get_column_index("postal_code")));
+            assertEquals(-1, schema.get_column_index("no_such_column"));
+            assertSame(schema, storage_manager.get_schema("address"));
+            assertNull(storage_manager.get_schema("no_such_table"));
+
+            // address 1 has no postal code
+            Object[] first = storage_manager.get_records_from_block("address", 1).get(0);
+            assertEquals(1, first[0]);
+            assertNull(first[2]);
+
+            // a null string does not shift the fields after it
+            Object[] row = { 10000, 300, null, "1 Main Street", null, "Alberta", "555", "2006-02-15 09:45:30" };
+            long rid = storage_manager.insert_row("address", row);
+            assertArrayEquals(row, storage_manager.get_record("address", rid));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
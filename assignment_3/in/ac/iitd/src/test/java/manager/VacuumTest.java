@@ -0,0 +1,228 @@
+import manager.StorageManager;
+import manager.TableCursor;
+import manager.Vacuum;
+import storage.RecordId;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VacuumTest {
+
+    private RexLiteral literal(int value) {
+        return new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    private int count_rows(StorageManager storage_manager, String table) {
+        int rows = 0;
+        List<Object[]> records;
+        for(int block_id = 1; (records = storage_manager.get_records_from_block(table, block_id)) != null; block_id++) {
+            rows += records.size();
+        }
+        return rows;
+    }
+
+    private int count_used_blocks(StorageManager storage_manager, String table) {
+        int blocks = 0;
+        List<Object[]> records;
+        for(int block_id = 1; (records = storage_manager.get_records_from_block(table, block_id)) != null; block_id++) {
+            if(!records.isEmpty()) {
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+
+    @Test
+    public void test_delete_and_vacuum() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            storage_manager.create_index("rental", "rental_id", 10);
+
+            int rows = count_rows(storage_manager, "rental");
+            int blocks = count_used_blocks(storage_manager, "rental");
+
+            // staff 1 handled about half of the rentals
+            assertTrue(storage_manager.delete("rental", "staff_id", literal(1)));
+            int remaining = count_rows(storage_manager, "rental");
+            assertTrue(remaining < rows);
+            assertEquals(blocks, count_used_blocks(storage_manager, "rental"));
+
+            new Vacuum(storage_manager, 1).run_pass();
+
+            // same rows in far fewer blocks
+            assertEquals(remaining, count_rows(storage_manager, "rental"));
+            assertTrue(count_used_blocks(storage_manager, "rental") < blocks * 3 / 4);
+
+            // the index follows the moved rows, deleted ones are gone from it
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("rental", block_id)) != null; block_id++) {
+                for(Object[] record : records) {
+                    assertEquals(2, record[3]);
+                    assertEquals(block_id, storage_manager.search("rental", "rental_id", literal((Integer) record[0])));
+                }
+            }
+            // rental 2 was handled by staff 1
+            assertEquals(-1, storage_manager.search("rental", "rental_id", literal(2)));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_vacuum_with_open_scan() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            assertTrue(storage_manager.delete("rental", "staff_id", literal(1)));
+            int remaining = count_rows(storage_manager, "rental");
+            int blocks = count_used_blocks(storage_manager, "rental");
+            int num_blocks = 0;
+            while(storage_manager.get_records_from_block("rental", num_blocks + 1) != null) {
+                num_blocks++;
+            }
+
+            // rows are not moved behind a running scan, so it still sees every row. Without that a vacuum step
+            // on the block just read would move the rows of the next one into it
+            int rows = 0;
+            int block_id = 0;
+            try (TableCursor cursor = storage_manager.open_cursor("rental", null, null)) {
+                while(cursor.next()) {
+                    rows++;
+                    if(RecordId.block_id(cursor.get_rid()) != block_id) {
+                        block_id = RecordId.block_id(cursor.get_rid());
+                        storage_manager.vacuum_block("rental", block_id);
+                    }
+                }
+            }
+            assertEquals(remaining, rows);
+            assertEquals(blocks, count_used_blocks(storage_manager, "rental"));
+
+            // once it is closed the rows are moved, emptied blocks stay in the table for later inserts
+            new Vacuum(storage_manager, 1).run_pass();
+            assertTrue(count_used_blocks(storage_manager, "rental") < blocks * 3 / 4);
+            assertEquals(remaining, count_rows(storage_manager, "rental"));
+            assertNotNull(storage_manager.get_records_from_block("rental", num_blocks));
+            assertNull(storage_manager.get_records_from_block("rental", num_blocks + 1));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_vacuum_with_unclosed_cursor() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            assertTrue(storage_manager.delete("rental", "staff_id", literal(1)));
+            int remaining = count_rows(storage_manager, "rental");
+            int blocks = count_used_blocks(storage_manager, "rental");
+
+            // a cursor left open in block 1 only keeps rows from being moved into that block, the rest of
+            // the table is vacuumed and the cursor still sees every row
+            TableCursor cursor = storage_manager.open_cursor("rental", null, null);
+            assertTrue(cursor.next());
+            new Vacuum(storage_manager, 1).run_pass();
+            assertTrue(count_used_blocks(storage_manager, "rental") < blocks * 3 / 4);
+            assertEquals(remaining, count_rows(storage_manager, "rental"));
+            int rows = 1;
+            while(cursor.next()) {
+                rows++;
+            }
+            assertEquals(remaining, rows);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_delete_with_index() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            storage_manager.create_index("rental", "customer_id", 10);
+            storage_manager.create_index("rental", "rental_id", 10);
+            int customer_column = storage_manager.get_schema("rental").get_column_index("customer_id");
+            int rows = count_rows(storage_manager, "rental");
+
+            // the rows of customer 1 come from its index entries, which span leaves
+            List<Long> rids = storage_manager.search_all("rental", "customer_id", literal(1));
+            assertTrue(rids.size() > 10);
+            List<Object[]> deleted = new ArrayList<>();
+            for(long rid : rids) {
+                deleted.add(storage_manager.get_record("rental", rid));
+            }
+            int others = storage_manager.search_all("rental", "customer_id", literal(2)).size();
+            assertTrue(storage_manager.delete("rental", "customer_id", literal(1)));
+            assertFalse(storage_manager.delete("rental", "customer_id", literal(1)));
+            assertEquals(rows - rids.size(), count_rows(storage_manager, "rental"));
+            assertTrue(storage_manager.search_all("rental", "customer_id", literal(1)).isEmpty());
+            for(Object[] record : deleted) {
+                assertEquals(1, record[customer_column]);
+                assertEquals(-1, storage_manager.search("rental", "rental_id", literal((Integer) record[0])));
+            }
+            assertEquals(others, storage_manager.search_all("rental", "customer_id", literal(2)).size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_delete_literals() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            storage_manager.create_index("actor", "actor_id", 10);
+            RexBuilder builder = new RexBuilder(new JavaTypeFactoryImpl());
+            int rows = count_rows(storage_manager, "actor");
+
+            // no actor_id equals a number with a fraction or one beyond the int range, 4294967303 wraps to 7
+            RexLiteral fraction = builder.makeExactLiteral(new BigDecimal("5.5"));
+            RexLiteral beyond = builder.makeExactLiteral(new BigDecimal("4294967303"));
+            assertFalse(storage_manager.delete("actor", "actor_id", fraction));
+            assertFalse(storage_manager.delete("actor", "actor_id", beyond));
+            assertEquals(-1, storage_manager.search("actor", "actor_id", fraction));
+            assertEquals(-1, storage_manager.search_rid("actor", "actor_id", beyond));
+            assertEquals(rows, count_rows(storage_manager, "actor"));
+
+            // a whole number with a scale still matches
+            assertTrue(storage_manager.delete("actor", "actor_id", builder.makeExactLiteral(new BigDecimal("5.0"))));
+            assertEquals(rows - 1, count_rows(storage_manager, "actor"));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,110 @@
+import manager.StorageManager;
+import manager.TableSchema;
+import manager.VectorBatch;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class VectorBatchTest {
+
+    // every batch of table against get_records_from_block
+    private void check(StorageManager storage_manager, String table) {
+        VectorBatch batch = storage_manager.new_batch(table, null);
+        List<Object[]> records;
+        int block_id = 1;
+        for(; (records = storage_manager.get_records_from_block(table, block_id)) != null; block_id++) {
+            assertTrue(storage_manager.read_batch(table, block_id, batch, null));
+            assertEquals(records.size(), batch.get_size());
+            assertEquals(records.size(), batch.get_selected());
+            for(int row = 0; row < records.size(); row++) {
+                assertEquals(row, batch.get_selection()[row]);
+                for(int i = 0; i < batch.get_num_vectors(); i++) {
+                    assertEquals(table, records.get(row)[i], batch.get_value(i, row));
+                }
+            }
+        }
+        assertFalse(storage_manager.read_batch(table, block_id, batch, null));
+    }
+
+    @Test
+    public void test_vector_batch() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            // ints, doubles, strings and null postal codes
+            check(storage_manager, "film");
+            check(storage_manager, "address");
+            check(storage_manager, "payment");
+
+            // a projected batch, summed in a loop over the primitive vectors
+            int[] columns = storage_manager.get_columns("film", Arrays.asList("length", "rental_rate", "title"));
+            VectorBatch batch = storage_manager.new_batch("film", columns);
+            assertEquals(TableSchema.INTEGER, batch.get_type(0));
+            assertEquals(TableSchema.DOUBLE, batch.get_type(1));
+            assertEquals(TableSchema.VARCHAR, batch.get_type(2));
+
+            long length = 0;
+            double rate = 0;
+            long expected_length = 0;
+            double expected_rate = 0;
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("film", block_id, columns)) != null; block_id++) {
+                storage_manager.read_batch("film", block_id, batch, null);
+                int[] lengths = batch.get_ints(0);
+                double[] rates = batch.get_doubles(1);
+                for(int row = 0; row < batch.get_size(); row++) {
+                    length += lengths[row];
+                    rate += rates[row];
+                    assertEquals(records.get(row)[2], batch.get_string(2, row));
+                    assertEquals(storage_manager.get_record("film", batch.get_rid(row))[columns[2]], batch.get_string(2, row));
+                }
+                for(Object[] record : records) {
+                    expected_length += (Integer) record[0];
+                    expected_rate += (Double) record[1];
+                }
+            }
+            assertEquals(expected_length, length);
+            assertEquals(expected_rate, rate, 1e-6);
+
+            // the selection vector after a filter, narrowed further by hand
+            int[] ids = storage_manager.get_columns("address", Arrays.asList("address_id", "postal_code"));
+            batch = storage_manager.new_batch("address", ids);
+            RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(
+                    calciteConnection.parseSql("select * from address where address_id > 2")));
+            Filter filter = (Filter) ((Project) relNode).getInput();
+            storage_manager.read_batch("address", 1, batch,
+                    storage_manager.compile_filter("address", filter.getInput().getRowType(), filter.getCondition()));
+            int[] selection = batch.get_selection();
+            int passed = 0;
+            for(int row = 0; row < batch.get_size(); row++) {
+                if(batch.get_ints(0)[row] > 2) {
+                    assertEquals(row, selection[passed++]);
+                }
+            }
+            assertEquals(passed, batch.get_selected());
+            int count = 0;
+            for(int k = 0; k < batch.get_selected(); k++) {
+                if(batch.is_null(1, selection[k])) {
+                    selection[count++] = selection[k];
+                }
+            }
+            batch.set_selected(count);
+            assertTrue(count > 0 && count < batch.get_size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
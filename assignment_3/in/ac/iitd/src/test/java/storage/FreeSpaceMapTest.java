@@ -0,0 +1,88 @@
+import storage.Block;
+import storage.File;
+import storage.RecordId;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class FreeSpaceMapTest {
+
+    @Test
+    public void test_insert_reuses_free_space() {
+        File file = new File();
+        file.add_block(new Block());
+        byte[] record = new byte[300];
+        for(int i = 0; i < 40; i++) {
+            if(!file.add_record_to_last_block(record)) {
+                file.add_record_to_new_block(record);
+            }
+        }
+        int num_blocks = file.get_num_blocks();
+        assertTrue(num_blocks > 3);
+
+        // empty block 1, as if all its records were deleted
+        file.write_data(1, 0, new byte[]{ 0, 0 });
+        int free = file.get_free_bytes(1);
+        assertEquals(file.get_data(1).length - 2, free);
+
+        // the next records go into block 1 instead of a new block
+        for(int i = 0; i < 10; i++) {
+            assertEquals(RecordId.make(1, i), file.insert_record(record));
+        }
+        assertEquals(num_blocks, file.get_num_blocks());
+        assertEquals(free - 10 * (record.length + 2), file.get_free_bytes(1));
+    }
+
+    @Test
+    public void test_small_free_space_is_reused() {
+        File file = new File();
+        file.add_block(new Block());
+        byte[] record = new byte[300];
+        for(int i = 0; i < 40; i++) {
+            if(!file.add_record_to_last_block(record)) {
+                file.add_record_to_new_block(record);
+            }
+        }
+        int num_blocks = file.get_num_blocks();
+        int free = file.get_free_bytes(1);
+        assertTrue(free < 256);
+
+        // a small row fits into the few bytes left in block 1, not only into the last block
+        byte[] small = new byte[20];
+        assertEquals(RecordId.make(1, 13), file.insert_record(small));
+        assertEquals(free - (small.length + 2), file.get_free_bytes(1));
+        assertEquals(num_blocks, file.get_num_blocks());
+    }
+
+    @Test
+    public void test_insert_row() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("actor", "actor_id", 10);
+
+            Object[] row = new Object[]{ 201, "Grace", "Hopper", "2013-05-26 14:47:57.62" };
+            long rid = calciteConnection.insert_row("actor", row);
+            assertTrue(RecordId.block_id(rid) > 0);
+
+            List<Object[]> records = calciteConnection.get_records_from_block("actor", RecordId.block_id(rid));
+            boolean found = false;
+            for(Object[] record : records) {
+                found |= Arrays.equals(row, record);
+            }
+            assertTrue(found);
+
+            // the index of the table knows the new row
+            assertTrue(calciteConnection.return_bfs_index("actor", "actor_id").contains(201));
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,46 @@
+import manager.StorageManager;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedStorageTest {
+
+    @Test
+    public void test_mapped_table() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+
+            List<Object[]> expected = calciteConnection.get_records_from_block("film", 3);
+
+            Path path = Files.createTempFile("film", ".pages");
+            path.toFile().deleteOnExit();
+            storage_manager.map_table("film", path);
+
+            List<Object[]> result = calciteConnection.get_records_from_block("film", 3);
+            assertEquals(expected.size(), result.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), result.get(i));
+            }
+
+            // index builds read the mapped blocks in place
+            calciteConnection.create_index("film", "film_id", 10);
+            ArrayList<Integer> bfs = calciteConnection.return_bfs_index("film", "film_id");
+            for(int film_id = 1; film_id <= 1000; film_id++) {
+                assertTrue(bfs.contains(film_id));
+            }
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
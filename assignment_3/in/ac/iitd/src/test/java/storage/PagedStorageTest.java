@@ -0,0 +1,44 @@
+import manager.StorageManager;
+import storage.BufferPool;
+import storage.DB;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PagedStorageTest {
+
+    @Test
+    public void test_paged_matches_in_memory() {
+        try {
+            MyCalciteConnection inMemory = new MyCalciteConnection();
+            // a pool much smaller than the dataset, so pages are evicted and read back all the time
+            MyCalciteConnection paged = new MyCalciteConnection(new StorageManager(new DB(new BufferPool(8))));
+
+            for(int block_id = 1; block_id <= 3; block_id++) {
+                List<Object[]> expected = inMemory.get_records_from_block("rental", block_id);
+                List<Object[]> result = paged.get_records_from_block("rental", block_id);
+                assertEquals(expected.size(), result.size());
+                for(int i = 0; i < expected.size(); i++) {
+                    assertArrayEquals(expected.get(i), result.get(i));
+                }
+            }
+
+            inMemory.create_index("payment", "payment_id", 5);
+            paged.create_index("payment", "payment_id", 5);
+            ArrayList<Integer> expected = inMemory.return_bfs_index("payment", "payment_id");
+            ArrayList<Integer> result = paged.return_bfs_index("payment", "payment_id");
+            assertEquals(expected, result);
+
+            inMemory.close();
+            paged.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,96 @@
+import manager.StorageManager;
+import manager.Vacuum;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexLiteral;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SnapshotTest {
+
+    private RexLiteral literal(int value) {
+        return new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    @Test
+    public void test_checkpoint_and_reopen() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("category", "category_id", 3);
+            List<Object[]> expected = calciteConnection.get_records_from_block("actor", 2);
+
+            Path path = Files.createTempFile("db362", ".snapshot");
+            path.toFile().deleteOnExit();
+            calciteConnection.checkpoint(path.toString());
+            calciteConnection.close();
+
+            MyCalciteConnection reopened = new MyCalciteConnection(StorageManager.open_snapshot(path));
+            List<Object[]> result = reopened.get_records_from_block("actor", 2);
+            assertEquals(expected.size(), result.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), result.get(i));
+            }
+
+            // the index comes back with the snapshot, it is not rebuilt
+            ArrayList<Integer> bfs = reopened.return_bfs_index("category", "category_id");
+            assertEquals(30, bfs.size());
+            assertEquals(Integer.valueOf(5), bfs.get(0));
+
+            reopened.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_checkpoint_during_vacuum() {
+        try {
+            StorageManager storage_manager = new StorageManager();
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            storage_manager.create_index("rental", "rental_id", 10);
+            assertTrue(storage_manager.delete("rental", "staff_id", literal(1)));
+            int remaining = 0;
+            List<Object[]> records;
+            for(int block_id = 1; (records = storage_manager.get_records_from_block("rental", block_id)) != null; block_id++) {
+                remaining += records.size();
+            }
+
+            // every image holds each row once, and the index entry of a moved row points at its new block
+            Path path = Files.createTempFile("db362", ".snapshot");
+            path.toFile().deleteOnExit();
+            Vacuum vacuum = new Vacuum(storage_manager, 1);
+            vacuum.start();
+            for(int i = 0; i < 5; i++) {
+                calciteConnection.checkpoint(path.toString());
+                StorageManager reopened = StorageManager.open_snapshot(path);
+                int rows = 0;
+                for(int block_id = 1; (records = reopened.get_records_from_block("rental", block_id)) != null; block_id++) {
+                    for(Object[] record : records) {
+                        rows++;
+                        assertEquals(block_id, reopened.search("rental", "rental_id", literal((Integer) record[0])));
+                    }
+                }
+                assertEquals(remaining, rows);
+            }
+            vacuum.stop();
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,88 @@
+import manager.StorageManager;
+import storage.WriteAheadLog;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rex.RexBuilder;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WriteAheadLogTest {
+
+    @Test
+    public void test_recover_from_log() {
+        try {
+            Path log = Files.createTempFile("db362", ".wal");
+            log.toFile().deleteOnExit();
+
+            WriteAheadLog wal = new WriteAheadLog(log, WriteAheadLog.FsyncPolicy.BATCHED, 8, 0);
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(StorageManager.recover(null, wal));
+            calciteConnection.create_index("actor", "actor_id", 10);
+            List<Object[]> expected = calciteConnection.get_records_from_block("rental", 5);
+            ArrayList<Integer> expected_bfs = calciteConnection.return_bfs_index("actor", "actor_id");
+            calciteConnection.close();
+
+            // a torn record at the end of the log, as left behind by a crash, is ignored
+            Files.write(log, new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+            MyCalciteConnection recovered = new MyCalciteConnection(StorageManager.recover(null, new WriteAheadLog(log)));
+            List<Object[]> result = recovered.get_records_from_block("rental", 5);
+            assertEquals(expected.size(), result.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), result.get(i));
+            }
+            assertEquals(expected_bfs, recovered.return_bfs_index("actor", "actor_id"));
+            recovered.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_truncate_keeps_later_commits() {
+        try {
+            Path log = Files.createTempFile("db362", ".wal");
+            log.toFile().deleteOnExit();
+            Path path = Files.createTempFile("db362", ".snapshot");
+            path.toFile().deleteOnExit();
+
+            WriteAheadLog wal = new WriteAheadLog(log);
+            StorageManager storage_manager = StorageManager.recover(null, wal);
+            MyCalciteConnection calciteConnection = new MyCalciteConnection(storage_manager);
+            calciteConnection.checkpoint(path.toString());
+
+            // a delete committed after the pages of a checkpoint were copied, but before the log is cut
+            long lsn = wal.get_lsn();
+            storage_manager.delete("rental", "staff_id", new RexBuilder(new JavaTypeFactoryImpl()).makeExactLiteral(BigDecimal.ONE));
+            List<Object[]> expected = calciteConnection.get_records_from_block("rental", 5);
+            long size = Files.size(log);
+            wal.truncate(lsn);
+            assertEquals(size - lsn, Files.size(log));
+            calciteConnection.close();
+
+            MyCalciteConnection recovered = new MyCalciteConnection(StorageManager.recover(path, new WriteAheadLog(log)));
+            List<Object[]> result = recovered.get_records_from_block("rental", 5);
+            assertEquals(expected.size(), result.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), result.get(i));
+                assertEquals(2, result.get(i)[3]);
+            }
+            recovered.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}